@@ -8,6 +8,8 @@ import com.rl.obf.*;
 import com.rl.obf.classfile.ClassConstants;
 import com.rl.obf.classfile.ClassFile;
 import com.rl.obf.classfile.ClassFileException;
+import com.rl.util.AsyncLineWriter;
+import com.rl.util.ZipWriter;
 
 public class NameProvider
 {
@@ -27,11 +29,20 @@ public class NameProvider
     public static boolean multipass = true;
     public static boolean verbose = false;
     public static boolean fullMap = false;
+    public static boolean mapOnly = false;
+    public static long classCacheSize = 64L * 1024 * 1024;
+    public static int threads = Runtime.getRuntime().availableProcessors();
+    public static int compression = ZipWriter.LEVEL_DEFAULT;
+    public static List<File> classpath = new ArrayList<File>();
+    public static File libraryCacheDir = null;
 
     private static Set<File> obfFiles = new HashSet<File>();
     private static Set<File> reobFiles = new HashSet<File>();
     private static File npLog = null;
     private static File roLog = null;
+    private static AsyncLineWriter logWriter = null;
+    private static boolean logShutdownHook = false;
+    private static ThreadLocal<DeferredNames> deferredNames = new ThreadLocal<DeferredNames>();
 
     private static Set<String> protectedPackages = new HashSet<String>();
 
@@ -320,6 +331,90 @@ public class NameProvider
                             NameProvider.fullMap = true;
                         }
                     }
+                    else if (defines[0].equalsIgnoreCase("maponly"))
+                    {
+                        String value = defines[1].substring(0, 1);
+                        if (value.equalsIgnoreCase("1") || value.equalsIgnoreCase("t") || value.equalsIgnoreCase("y"))
+                        {
+                            NameProvider.mapOnly = true;
+                        }
+                    }
+                    else if (defines[0].equalsIgnoreCase("classcache"))
+                    {
+                        try
+                        {
+                            long megabytes = Long.parseLong(defines[1].trim());
+                            NameProvider.classCacheSize = megabytes * 1024 * 1024;
+                        }
+                        catch (NumberFormatException e)
+                        {
+                            throw new NumberFormatException("Invalid class cache size: " + defines[1]);
+                        }
+                    }
+                    else if (defines[0].equalsIgnoreCase("threads"))
+                    {
+                        try
+                        {
+                            NameProvider.threads = Integer.parseInt(defines[1].trim());
+                        }
+                        catch (NumberFormatException e)
+                        {
+                            throw new NumberFormatException("Invalid thread count: " + defines[1]);
+                        }
+                    }
+                    else if (defines[0].equalsIgnoreCase("compression"))
+                    {
+                        String value = defines[1].trim();
+                        if (value.equalsIgnoreCase("stored"))
+                        {
+                            NameProvider.compression = ZipWriter.LEVEL_STORED;
+                        }
+                        else
+                        {
+                            int level;
+                            try
+                            {
+                                level = Integer.parseInt(value);
+                            }
+                            catch (NumberFormatException e)
+                            {
+                                level = -1;
+                            }
+                            if ((level < 0) || (level > 9))
+                            {
+                                throw new NumberFormatException("Invalid compression level: " + defines[1]);
+                            }
+                            NameProvider.compression = level;
+                        }
+                    }
+                    else if (defines[0].equalsIgnoreCase("classpath"))
+                    {
+                        for (String entry : defines[1].trim().split(File.pathSeparator))
+                        {
+                            if (entry.length() == 0)
+                            {
+                                continue;
+                            }
+                            File file = new File(entry);
+                            if (file.exists())
+                            {
+                                NameProvider.classpath.add(file);
+                            }
+                            else
+                            {
+                                throw new FileNotFoundException("Could not find classpath entry " + entry);
+                            }
+                        }
+                    }
+                    else if (defines[0].equalsIgnoreCase("librarycache"))
+                    {
+                        NameProvider.libraryCacheDir = new File(defines[1].trim());
+                        NameProvider.libraryCacheDir.mkdirs();
+                        if (!NameProvider.libraryCacheDir.isDirectory())
+                        {
+                            throw new FileNotFoundException("Could not find library cache directory " + defines[1]);
+                        }
+                    }
                     //Used to change the class identifier, useful when  obfuscating to srg names.
                     else if (defines[0].equalsIgnoreCase("identifier"))
                     {
@@ -353,7 +448,9 @@ public class NameProvider
             newArgs[1] = reoboutput;
         }
 
-        if ((newArgs[0] == null) || (newArgs[1] == null) || (newArgs[2] == null) || (newArgs[3] == null))
+        // No output jar is written when only the mapping is wanted
+        if ((newArgs[0] == null) || ((newArgs[1] == null) && !NameProvider.mapOnly) || (newArgs[2] == null)
+            || (newArgs[3] == null))
         {
             return null;
         }
@@ -378,25 +475,8 @@ public class NameProvider
 
         if (logFile != null)
         {
-            FileWriter writer = null;
-            try
-            {
-                writer = new FileWriter(logFile);
-            }
-            finally
-            {
-                if (writer != null)
-                {
-                    try
-                    {
-                        writer.close();
-                    }
-                    catch (IOException e)
-                    {
-                        // ignore
-                    }
-                }
-            }
+            NameProvider.closeLog();
+            NameProvider.openLog(logFile, false);
         }
     }
 
@@ -668,6 +748,93 @@ public class NameProvider
         NameProvider.log(text, false, true);
     }
 
+    /**
+     * Where the output name of a package, class, method or field came from, as recorded in the verbose log
+     */
+    public enum NameSource
+    {
+        DERIVED_CLASS("from derived class", true),
+        SUPER_CLASS("from super class", true),
+        NAME_MAKER("from name maker", true),
+        SCRIPT_MAP("from ScriptMap", true),
+        NO_NAME("null from name maker", false),
+        SCRIPT("fixed from Script", false),
+        FIXED("fixed", false);
+
+        private final String text;
+        private final boolean named;
+
+        private NameSource(String text, boolean named)
+        {
+            this.text = text;
+            this.named = named;
+        }
+    }
+
+    /**
+     * Log the decision on an item's output name, if verbose logging is on. Nothing is formatted otherwise.
+     * 
+     * @param ti
+     * @param source
+     */
+    public static void verboseDecision(TreeItem ti, NameSource source)
+    {
+        if (!NameProvider.verbose)
+        {
+            return;
+        }
+
+        // Names given while deferred are not final yet, so keep the item and format it later
+        DeferredNames deferred = NameProvider.deferredNames.get();
+        if (deferred != null)
+        {
+            deferred.lines.add(new DeferredLine(null, false, ti, source));
+            return;
+        }
+
+        // Packages and classes are logged by full name, methods and fields by full input name and simple output name
+        String type = "Misc";
+        String fullInName;
+        String outName;
+        boolean unchanged;
+        if (ti instanceof PkCl)
+        {
+            type = (ti instanceof Pk ? "Package" : "Class");
+            fullInName = ti.getFullInName(true);
+            outName = ti.getFullOutName(true);
+            unchanged = outName.equals(fullInName);
+        }
+        else
+        {
+            if (ti instanceof Md)
+            {
+                type = "Method";
+            }
+            else if (ti instanceof Fd)
+            {
+                type = "Field";
+            }
+            fullInName = ti.getFullInName();
+            outName = ti.getOutName();
+            unchanged = outName.equals(ti.getInName());
+        }
+
+        StringBuilder sb = new StringBuilder("# ").append(type).append(' ').append(fullInName).append(' ');
+        if (source.named)
+        {
+            if (unchanged)
+            {
+                sb.append("unchanged ");
+            }
+            else
+            {
+                sb.append("renamed to ").append(outName).append(' ');
+            }
+        }
+        sb.append(source.text);
+        NameProvider.log(sb.toString(), false, true);
+    }
+
     public static void log(String text, boolean error, boolean verbose)
     {
         if (!NameProvider.verbose && verbose)
@@ -675,6 +842,17 @@ public class NameProvider
             return;
         }
 
+        DeferredNames deferred = NameProvider.deferredNames.get();
+        if (deferred != null)
+        {
+            deferred.lines.add(new DeferredLine(text, error, null, null));
+            return;
+        }
+        NameProvider.writeLog(text, error);
+    }
+
+    private static synchronized void writeLog(String text, boolean error)
+    {
         if (!NameProvider.quiet && !error)
         {
             System.out.println(text);
@@ -700,39 +878,166 @@ public class NameProvider
             return;
         }
 
-        FileWriter fileWriter = null;
-        BufferedWriter writer = null;
-        try
+        // Lines are written by a background thread, in the order they are logged
+        if (NameProvider.logWriter == null)
+        {
+            try
+            {
+                NameProvider.openLog(log, true);
+            }
+            catch (IOException e)
+            {
+                return;
+            }
+        }
+        NameProvider.logWriter.writeLine(text);
+    }
+
+    private static synchronized void openLog(File log, boolean append) throws IOException
+    {
+        NameProvider.logWriter = new AsyncLineWriter(log, append);
+        if (!NameProvider.logShutdownHook)
+        {
+            // Make sure queued lines are written if we exit on an error
+            Runtime.getRuntime().addShutdownHook(new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    NameProvider.closeLog();
+                }
+            });
+            NameProvider.logShutdownHook = true;
+        }
+    }
+
+    /**
+     * Write out everything logged so far, and close the log file.
+     */
+    public static synchronized void closeLog()
+    {
+        if (NameProvider.logWriter != null)
         {
-            fileWriter = new FileWriter(log, true);
-            writer = new BufferedWriter(fileWriter);
+            NameProvider.logWriter.close();
+            NameProvider.logWriter = null;
+        }
+    }
+
+    /**
+     * Make a name unique by numbering it, with the number before or after the counter is advanced.
+     * 
+     * @param prefix
+     * @param name
+     * @param preIncrement
+     */
+    private static String makeUniqueName(String prefix, String name, boolean preIncrement)
+    {
+        DeferredNames deferred = NameProvider.deferredNames.get();
+        if (deferred != null)
+        {
+            // A placeholder, recognised by identity when the name is numbered
+            String placeholder = new String(prefix + name);
+            deferred.names.add(new DeferredName(placeholder, prefix, name, preIncrement));
+            return placeholder;
+        }
+
+        int index = preIncrement ? ++NameProvider.uniqueStart : NameProvider.uniqueStart++;
+        return prefix + index + "_" + name;
+    }
+
+    /**
+     * Defer the numbering of unique names, and the logging, of work done on the current thread. The names given are
+     * placeholders until the deferred names are numbered.
+     */
+    public static DeferredNames deferNames()
+    {
+        DeferredNames deferred = new DeferredNames();
+        NameProvider.deferredNames.set(deferred);
+        return deferred;
+    }
 
-            writer.write(text);
-            writer.newLine();
+    /**
+     * Stop deferring on the current thread.
+     */
+    public static void endDeferNames()
+    {
+        NameProvider.deferredNames.remove();
+    }
+
+    /**
+     * Unique names and log lines from work done on another thread, held back so that they can be numbered and logged in
+     * the order the work would have been done in on a single thread.
+     */
+    public static class DeferredNames
+    {
+        private List<DeferredName> names = new ArrayList<DeferredName>();
+        private List<DeferredLine> lines = new ArrayList<DeferredLine>();
 
-            writer.flush();
+        private DeferredNames()
+        {
         }
-        catch (IOException e)
+
+        /**
+         * Number the unique names, continuing from the names given so far, and map each placeholder to its final name.
+         * 
+         * @param finalNames
+         */
+        public void number(Map<String, String> finalNames)
         {
-            return;
+            for (DeferredName dn : this.names)
+            {
+                finalNames.put(dn.placeholder, NameProvider.makeUniqueName(dn.prefix, dn.name, dn.preIncrement));
+            }
         }
-        finally
+
+        /**
+         * Log the lines, once the names they show are final.
+         */
+        public void replay()
         {
-            try
+            for (DeferredLine dl : this.lines)
             {
-                if (writer != null)
+                if (dl.ti != null)
                 {
-                    writer.close();
+                    NameProvider.verboseDecision(dl.ti, dl.source);
                 }
-                if (fileWriter != null)
+                else
                 {
-                    fileWriter.close();
+                    NameProvider.log(dl.text, dl.error, false);
                 }
             }
-            catch (IOException e)
-            {
-                // ignore
-            }
+        }
+    }
+
+    private static class DeferredName
+    {
+        private String placeholder;
+        private String prefix;
+        private String name;
+        private boolean preIncrement;
+
+        private DeferredName(String placeholder, String prefix, String name, boolean preIncrement)
+        {
+            this.placeholder = placeholder;
+            this.prefix = prefix;
+            this.name = name;
+            this.preIncrement = preIncrement;
+        }
+    }
+
+    private static class DeferredLine
+    {
+        private String text;
+        private boolean error;
+        private TreeItem ti;
+        private NameSource source;
+
+        private DeferredLine(String text, boolean error, TreeItem ti, NameSource source)
+        {
+            this.text = text;
+            this.error = error;
+            this.ti = ti;
+            this.source = source;
         }
     }
 
@@ -1012,7 +1317,7 @@ public class NameProvider
 
         if (NameProvider.currentMode == NameProvider.CLASSIC_MODE)
         {
-            newPackageName = "p_" + (++NameProvider.uniqueStart) + "_" + packageName;
+            newPackageName = NameProvider.makeUniqueName("p_", packageName, true);
             pk.setOutput();
             return newPackageName;
         }
@@ -1090,7 +1395,7 @@ public class NameProvider
             // don't rename anonymous inner classes
             if (!cl.isInnerClass() || !Character.isDigit(className.charAt(0)))
             {
-                newClassName = "C_" + (++NameProvider.uniqueStart) + "_" + className;
+                newClassName = NameProvider.makeUniqueName("C_", className, true);
             }
             cl.setOutput();
             return newClassName;
@@ -1114,7 +1419,7 @@ public class NameProvider
                     // don't rename anonymous inner classes
                     if (!cl.isInnerClass() || !Character.isDigit(className.charAt(0)))
                     {
-                        newClassName = "C_" + (NameProvider.uniqueStart++) + "_" + className;
+                        newClassName = NameProvider.makeUniqueName("C_", className, false);
                     }
                 }
                 else
@@ -1184,7 +1489,7 @@ public class NameProvider
 
         if (NameProvider.currentMode == NameProvider.CLASSIC_MODE)
         {
-            newMethodName = "func_" + (++NameProvider.uniqueStart) + "_" + methodName;
+            newMethodName = NameProvider.makeUniqueName("func_", methodName, true);
             md.setOutput();
             return newMethodName;
         }
@@ -1204,7 +1509,7 @@ public class NameProvider
             {
                 if (NameProvider.uniqueStart > 0)
                 {
-                    newMethodName = "func_" + (NameProvider.uniqueStart++) + "_" + methodName;
+                    newMethodName = NameProvider.makeUniqueName("func_", methodName, false);
                 }
                 else
                 {
@@ -1250,7 +1555,7 @@ public class NameProvider
 
         if (NameProvider.currentMode == NameProvider.CLASSIC_MODE)
         {
-            newFieldName = "field_" + (++NameProvider.uniqueStart) + "_" + fieldName;
+            newFieldName = NameProvider.makeUniqueName("field_", fieldName, true);
             fd.setOutput();
             return newFieldName;
         }
@@ -1270,7 +1575,7 @@ public class NameProvider
             {
                 if (NameProvider.uniqueStart > 0)
                 {
-                    newFieldName = "field_" + (NameProvider.uniqueStart++) + "_" + fieldName;
+                    newFieldName = NameProvider.makeUniqueName("field_", fieldName, false);
                 }
                 else
                 {
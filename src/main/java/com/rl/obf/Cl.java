@@ -22,6 +22,7 @@ package com.rl.obf;
 import java.io.*;
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import com.rl.NameProvider;
 import com.rl.obf.classfile.*;
@@ -58,11 +59,6 @@ public class Cl extends PkCl implements NameListUp, NameListDown
      */
     private boolean isResolved = false;
 
-    /**
-     * Has the class been scanned already?
-     */
-    private boolean isScanned = false;
-
     /**
      * Our superclass name
      */
@@ -98,7 +94,31 @@ public class Cl extends PkCl implements NameListUp, NameListDown
      */
     private List<String> warningList = new ArrayList<String>();
 
-    public static int nameSpace = 0;
+    /**
+     * Super-classes and interfaces in the tree, in the order searched for inherited members, computed on first use
+     */
+    private volatile Cl[] memberSearchOrder = null;
+
+    /**
+     * Names of all super-classes, in or out of the tree, computed on first use
+     */
+    private volatile Set<String> superClassNames = null;
+
+    /**
+     * Names of all super-classes and interfaces, in or out of the tree, computed on first use
+     */
+    private volatile Set<String> superTypeNames = null;
+
+    /**
+     * Inherited methods and fields already looked up, by name and descriptor (methods) or name (fields); a member which was
+     * not found is recorded as this class
+     */
+    private ConcurrentMap<String, TreeItem> resolvedMembers = new ConcurrentHashMap<String, TreeItem>();
+
+    /**
+     * Families of methods and fields in the inheritance name space this class is resolved in
+     */
+    private MemberFamilies memberFamilies = null;
 
 
     // Class Methods ---------------------------------------------------------
@@ -162,7 +182,7 @@ public class Cl extends PkCl implements NameListUp, NameListDown
      * 
      * @param cf
      */
-    public void setWarnings(ClassFile cf)
+    public void setWarnings(ClassHeader cf)
     {
         this.warningList = cf.listDangerMethods(this.warningList);
     }
@@ -274,190 +294,230 @@ public class Cl extends PkCl implements NameListUp, NameListDown
     }
 
     /**
-     * Does this internal class have the specified class or interface in its super or interface chain?
+     * Return the super-classes and interfaces in the tree to search for an inherited member, starting with this class. The
+     * order is that of a depth first search taking interfaces (last first) before the super-class, with repeats removed.
      * 
-     * @param queryName
-     * @param checkInterfaces
+     * @throws ClassFileException
      */
-    protected boolean hasAsSuperInt(String queryName, boolean checkInterfaces)
+    private Cl[] getMemberSearchOrder() throws ClassFileException
     {
-        try
+        Cl[] order = this.memberSearchOrder;
+        if (order == null)
         {
-            // Special case: is this java/lang/Object?
-            if (this.superClass == null)
-            {
-                return false;
-            }
-            // Check our parents
-            if (this.superClass.equals(queryName))
-            {
-                return true;
-            }
-            if (checkInterfaces)
-            {
-                for (String si : this.superInterfaces)
-                {
-                    if (queryName.equals(si))
-                    {
-                        return true;
-                    }
-                }
-            }
-            // Nothing, so recurse up through parents
-            Cl superClInt = this.classTree.getCl(this.superClass);
-            if (superClInt != null)
-            {
-                if (superClInt.hasAsSuperInt(queryName, checkInterfaces))
-                {
-                    return true;
-                }
-            }
-            else
+            List<Cl> list = new ArrayList<Cl>();
+            Set<Cl> visited = new HashSet<Cl>();
+            Stack<Cl> s = new Stack<Cl>();
+            s.push(this);
+            while (!s.empty())
             {
-                Class<?> superClExt = null;
-                try
-                {
-                    superClExt = Class.forName(ClassFile.translate(this.superClass));
-                }
-                catch (ClassNotFoundException e)
+                Cl cl = s.pop();
+                if (!visited.add(cl))
                 {
-                    // fall thru
+                    continue;
                 }
-                if (superClExt != null)
+                list.add(cl);
+
+                Cl superCl = cl.getSuperCl();
+                if (superCl != null)
                 {
-                    if (Cl.hasAsSuperExt(queryName, checkInterfaces, this.classTree, superClExt))
-                    {
-                        return true;
-                    }
+                    s.push(superCl);
                 }
-            }
-            if (checkInterfaces)
-            {
-                for (String si : this.superInterfaces)
+                for (Cl intfCl : cl.getSuperInterfaces())
                 {
-                    Cl interClInt = this.classTree.getCl(si);
-                    if (interClInt != null)
-                    {
-                        if (interClInt.hasAsSuperInt(queryName, checkInterfaces))
-                        {
-                            return true;
-                        }
-                    }
-                    else
-                    {
-                        Class<?> interClExt = null;
-                        try
-                        {
-                            interClExt = Class.forName(ClassFile.translate(si));
-                        }
-                        catch (ClassNotFoundException e)
-                        {
-                            // fall thru
-                        }
-                        if (interClExt != null)
-                        {
-                            if (Cl.hasAsSuperExt(queryName, checkInterfaces, this.classTree, interClExt))
-                            {
-                                return true;
-                            }
-                        }
-                    }
+                    s.push(intfCl);
                 }
             }
+            order = list.toArray(new Cl[list.size()]);
+            this.memberSearchOrder = order;
         }
-        catch (ClassFileException e)
-        {
-            // fall thru
-        }
-        return false;
+        return order;
     }
 
     /**
-     * Does this class have the specified class or interface in its super or interface chain?
+     * Return the method with this name and descriptor in this class or the nearest of its super-classes and interfaces in
+     * the tree, or null if there is none.
      * 
-     * @param queryName
-     * @param checkInterfaces
-     * @param classTree
-     * @param clExt
+     * @param name
+     * @param descriptor
+     * @throws ClassFileException
      */
-    protected static boolean hasAsSuperExt(String queryName, boolean checkInterfaces, ClassTree classTree, Class<?> clExt)
+    public Md resolveMethod(String name, String descriptor) throws ClassFileException
     {
-        try
+        String key = name + descriptor;
+        TreeItem ti = this.resolvedMembers.get(key);
+        if (ti == null)
         {
-            // Special case: is this java/lang/Object?
-            if ((clExt == null) || clExt.getName().equals("java.lang.Object"))
-            {
-                return false;
-            }
-            // Check our parents
-            String queryNameExt = ClassFile.translate(queryName);
-            Class<?> superClass = clExt.getSuperclass();
-            List<Class<?>> superInterfaces = Arrays.asList(clExt.getInterfaces());
-            if (superClass != null)
+            ti = this;
+            for (Cl cl : this.getMemberSearchOrder())
             {
-                if (queryNameExt.equals(superClass.getName()))
+                Md md = cl.getMethod(name, descriptor);
+                if (md != null)
                 {
-                    return true;
+                    ti = md;
+                    break;
                 }
             }
-            if (checkInterfaces)
+            this.resolvedMembers.put(key, ti);
+        }
+        return (ti == this) ? null : (Md)ti;
+    }
+
+    /**
+     * Return the field with this name in this class or the nearest of its super-classes and interfaces in the tree, or null
+     * if there is none.
+     * 
+     * @param name
+     * @throws ClassFileException
+     */
+    public Fd resolveField(String name) throws ClassFileException
+    {
+        TreeItem ti = this.resolvedMembers.get(name);
+        if (ti == null)
+        {
+            ti = this;
+            for (Cl cl : this.getMemberSearchOrder())
             {
-                for (Class<?> si : superInterfaces)
+                Fd fd = cl.getField(name);
+                if (fd != null)
                 {
-                    if (queryNameExt.equals(si.getName()))
-                    {
-                        return true;
-                    }
+                    ti = fd;
+                    break;
                 }
             }
-            // Nothing, so recurse up through parents
-            if (superClass != null)
+            this.resolvedMembers.put(name, ti);
+        }
+        return (ti == this) ? null : (Fd)ti;
+    }
+
+    /**
+     * Does this internal class have the specified class or interface in its super or interface chain?
+     * 
+     * @param queryName
+     * @param checkInterfaces
+     */
+    protected boolean hasAsSuperInt(String queryName, boolean checkInterfaces)
+    {
+        if (checkInterfaces)
+        {
+            return this.getSuperTypeNames().contains(queryName);
+        }
+
+        return this.getSuperClassNames().contains(queryName);
+    }
+
+    /**
+     * Return the names of all super-classes of this class, in or out of the tree.
+     */
+    private Set<String> getSuperClassNames()
+    {
+        Set<String> names = this.superClassNames;
+        if (names == null)
+        {
+            names = new HashSet<String>();
+            try
             {
-                Cl superClInt = classTree.getCl(ClassFile.backTranslate(superClass.getName()));
-                if (superClInt != null)
+                String name = this.superClass;
+                while ((name != null) && names.add(name))
                 {
-                    if (superClInt.hasAsSuperInt(queryName, checkInterfaces))
+                    Cl cl = this.classTree.getCl(name);
+                    if (cl != null)
                     {
-                        return true;
+                        name = cl.superClass;
                     }
-                }
-                else
-                {
-                    Class<?> superClExt = superClass;
-                    if (Cl.hasAsSuperExt(queryName, checkInterfaces, classTree, superClExt))
+                    else
                     {
-                        return true;
+                        LibraryClass lc = this.classTree.getLibraryIndex().getClass(name);
+                        name = ((lc == null) || lc.getName().equals("java/lang/Object")) ? null : lc.getSuperName();
                     }
                 }
             }
-            if (checkInterfaces)
+            catch (ClassFileException e)
+            {
+                // fall thru
+            }
+            this.superClassNames = names;
+        }
+        return names;
+    }
+
+    /**
+     * Return the names of all super-classes and interfaces of this class, in or out of the tree.
+     */
+    protected Set<String> getSuperTypeNames()
+    {
+        Set<String> names = this.superTypeNames;
+        if (names == null)
+        {
+            names = new HashSet<String>();
+            Stack<String> s = new Stack<String>();
+            Cl.pushSuperTypes(s, this.superClass, this.superInterfaces);
+            while (!s.empty())
             {
-                for (Class<?> si : superInterfaces)
+                String name = s.pop();
+                if (!names.add(name))
+                {
+                    continue;
+                }
+                try
                 {
-                    Cl interClInt = classTree.getCl(ClassFile.backTranslate(si.getName()));
-                    if (interClInt != null)
+                    Cl cl = this.classTree.getCl(name);
+                    if (cl != null)
                     {
-                        if (interClInt.hasAsSuperInt(queryName, checkInterfaces))
+                        // Reuse the names found for another class where possible, as they are complete
+                        Set<String> clNames = cl.superTypeNames;
+                        if (clNames != null)
+                        {
+                            names.addAll(clNames);
+                        }
+                        else
                         {
-                            return true;
+                            Cl.pushSuperTypes(s, cl.superClass, cl.superInterfaces);
                         }
                     }
                     else
                     {
-                        Class<?> interClExt = si;
-                        if (Cl.hasAsSuperExt(queryName, checkInterfaces, classTree, interClExt))
+                        LibraryClass lc = this.classTree.getLibraryIndex().getClass(name);
+                        if ((lc != null) && !lc.getName().equals("java/lang/Object"))
                         {
-                            return true;
+                            // Library interfaces have no super-class recorded, but still have super-interfaces
+                            if (lc.getSuperName() != null)
+                            {
+                                s.push(lc.getSuperName());
+                            }
+                            for (String si : lc.getInterfaces())
+                            {
+                                s.push(si);
+                            }
                         }
                     }
                 }
+                catch (ClassFileException e)
+                {
+                    // fall thru
+                }
             }
+            this.superTypeNames = names;
         }
-        catch (ClassFileException e)
+        return names;
+    }
+
+    /**
+     * Push the direct super-class and interfaces of a class, unless it has no super-class (i.e. is java/lang/Object).
+     * 
+     * @param s
+     * @param superClass
+     * @param superInterfaces
+     */
+    private static void pushSuperTypes(Stack<String> s, String superClass, List<String> superInterfaces)
+    {
+        if (superClass != null)
         {
-            // fall thru
+            s.push(superClass);
+            for (String si : superInterfaces)
+            {
+                s.push(si);
+            }
         }
-        return false;
     }
 
     /**
@@ -516,7 +576,7 @@ public class Cl extends PkCl implements NameListUp, NameListDown
      * @param md
      * @throws ClassFileException
      */
-    public Md addMethod(ClassFile cf, MethodInfo md) throws ClassFileException
+    public Md addMethod(ClassHeader cf, ClassHeader.Member md) throws ClassFileException
     {
         return this.addMethod(md.isSynthetic(), md.getName(), md.getDescriptor(), md.getAccessFlags());
     }
@@ -562,7 +622,7 @@ public class Cl extends PkCl implements NameListUp, NameListDown
      * @param fd
      * @throws ClassFileException
      */
-    public Fd addField(ClassFile cf, FieldInfo fd) throws ClassFileException
+    public Fd addField(ClassHeader cf, ClassHeader.Member fd) throws ClassFileException
     {
         return this.addField(fd.isSynthetic(), fd.getName(), fd.getDescriptor(), fd.getAccessFlags());
     }
@@ -592,9 +652,9 @@ public class Cl extends PkCl implements NameListUp, NameListDown
      */
     public void resetResolve()
     {
-        this.isScanned = false;
         this.isResolved = false;
         this.nameListDowns.clear();
+        this.memberFamilies = null;
     }
 
     /**
@@ -637,182 +697,82 @@ public class Cl extends PkCl implements NameListUp, NameListDown
         // Already processed, then do nothing
         if (!this.isResolved)
         {
-            // Get lists of method and field names in inheritance namespace
-            List<String> methods = new ArrayList<String>();
-            List<String> fields = new ArrayList<String>();
-            this.scanNameSpaceExcept(null, methods, fields);
+            // Group the methods and fields in the inheritance name space
+            this.indexNameSpace();
 
             // Resolve a full name space
             this.resolveNameSpaceExcept(null);
-
-            // and move to next
-            Cl.nameSpace++;
         }
     }
 
     /**
-     * Get lists of method and field names in inheritance namespace
+     * Group the methods and fields of every class connected to this one by inheritance into families sharing a name (and
+     * descriptor, for methods), and note the classes outside the JAR which the name space extends. Returns the number of
+     * classes in the name space, or 0 if the class is already in one or starts none (java/lang/Object).
      * 
-     * @param ignoreCl
-     * @param methods
-     * @param fields
      * @throws ClassFileException
      */
-    private void scanNameSpaceExcept(Cl ignoreCl, List<String> methods, List<String> fields) throws ClassFileException
+    public int indexNameSpace() throws ClassFileException
     {
         // Special case: we are java/lang/Object
-        if (this.superClass == null)
+        if ((this.superClass == null) || (this.memberFamilies != null))
         {
-            return;
+            return 0;
         }
 
-        // Traverse one step in each direction in name space, scanning
-        if (!this.isScanned)
+        MemberFamilies families = new MemberFamilies();
+        Set<Cl> visited = new HashSet<Cl>();
+        Set<String> extNames = new HashSet<String>();
+        Stack<Cl> s = new Stack<Cl>();
+        visited.add(this);
+        s.push(this);
+        while (!s.empty())
         {
-            // First step up to super classes, scanning them
-            Cl superCl = this.classTree.getCl(this.superClass);
-            if (superCl != null)
-            {
-                // internal to JAR
-                if (superCl != ignoreCl)
-                {
-                    superCl.scanNameSpaceExcept(this, methods, fields);
-                }
-            }
-            else
-            {
-                // external to JAR
-                Cl.scanExtSupers(this.superClass, methods, fields);
-            }
-            for (String si : this.superInterfaces)
-            {
-                Cl interfaceItem = this.classTree.getCl(si);
-                if ((interfaceItem != null) && (interfaceItem != ignoreCl))
-                {
-                    interfaceItem.scanNameSpaceExcept(this, methods, fields);
-                }
-            }
-
-            // Next, scan ourself
-            if (!this.isScanned)
-            {
-                this.scanThis(methods, fields);
-
-                // Signal class has been scanned
-                this.isScanned = true;
-            }
+            Cl cl = s.pop();
+            families.addNames(cl);
+            cl.memberFamilies = families;
 
-            // Finally step down to derived classes, resolving them
-            for (NameListDown nameListDown : this.nameListDowns)
+            // Resolution stops at java/lang/Object (or a placeholder), but its members can still be reached from below
+            if (cl.superClass == null)
             {
-                Cl cl = (Cl)nameListDown;
-                if (cl != ignoreCl)
-                {
-                    cl.scanNameSpaceExcept(this, methods, fields);
-                }
+                continue;
             }
-        }
-    }
-
-    /**
-     * Get lists of method and field names in inheritance namespace
-     * 
-     * @param name
-     * @param methods
-     * @param fields
-     */
-    private static void scanExtSupers(String name, List<String> methods, List<String> fields)
-    {
-        Class<?> extClass = null;
-        try
-        {
-            extClass = Class.forName(ClassFile.translate(name));
-        }
-        catch (ClassNotFoundException e)
-        {
-            return;
-        }
 
-        // Get public methods and fields from supers and interfaces up the tree
-        List<Method> allPubMethods = Arrays.asList(extClass.getMethods());
-        for (Method md : allPubMethods)
-        {
-            String methodName = md.getName();
-            if (!methods.contains(methodName))
-            {
-                methods.add(methodName);
-            }
-        }
-        List<Field> allPubFields = Arrays.asList(extClass.getFields());
-        for (Field fd : allPubFields)
-        {
-            String fieldName = fd.getName();
-            if (!fields.contains(fieldName))
-            {
-                fields.add(fieldName);
-            }
-        }
-        // Go up the super hierarchy, adding all non-public methods/fields
-        while (extClass != null)
-        {
-            List<Method> allClassMethods = Arrays.asList(extClass.getDeclaredMethods());
-            for (Method md : allClassMethods)
+            List<String> superNames = new ArrayList<String>();
+            superNames.add(cl.superClass);
+            superNames.addAll(cl.superInterfaces);
+            for (String superName : superNames)
             {
-                if (!Modifier.isPublic(md.getModifiers()))
+                Cl superCl = this.classTree.getCl(superName);
+                if (superCl != null)
                 {
-                    String methodName = md.getName();
-                    if (!methods.contains(methodName))
+                    if (visited.add(superCl))
                     {
-                        methods.add(methodName);
+                        s.push(superCl);
                     }
                 }
-            }
-            List<Field> allClassFields = Arrays.asList(extClass.getDeclaredFields());
-            for (Field fd : allClassFields)
-            {
-                if (!Modifier.isPublic(fd.getModifiers()))
+                else if (extNames.add(superName))
                 {
-                    String fieldName = fd.getName();
-                    if (!fields.contains(fieldName))
+                    if (this.classTree.getLibraryIndex().getClass(superName) == null)
                     {
-                        fields.add(fieldName);
+                        families.isComplete = false;
+                    }
+                    else
+                    {
+                        families.extNameListUps.add(this.getExtNameListUp(superName));
                     }
                 }
             }
-            extClass = extClass.getSuperclass();
-        }
-    }
-
-    /**
-     * Add method and field names from this class to the lists
-     * 
-     * @param methods
-     * @param fields
-     */
-    private void scanThis(List<String> methods, List<String> fields)
-    {
-        for (Md md : this.mds.values())
-        {
-            if (md.isFixed())
-            {
-                String name = md.getOutName();
-                if (!methods.contains(name))
-                {
-                    methods.add(name);
-                }
-            }
-        }
-        for (Fd fd : this.fds.values())
-        {
-            if (fd.isFixed())
+            for (NameListDown nameListDown : cl.nameListDowns)
             {
-                String name = fd.getOutName();
-                if (!fields.contains(name))
+                Cl derivedCl = (Cl)nameListDown;
+                if (visited.add(derivedCl))
                 {
-                    fields.add(name);
+                    s.push(derivedCl);
                 }
             }
         }
+        return visited.size();
     }
 
     /**
@@ -823,49 +783,7 @@ public class Cl extends PkCl implements NameListUp, NameListDown
      */
     private void resolveNameSpaceExcept(Cl ignoreCl) throws ClassFileException
     {
-        // Special case: we are java/lang/Object
-        if (this.superClass == null)
-        {
-            return;
-        }
-
-        // Traverse one step in each direction in name space, resolving
-        if (!this.isResolved)
-        {
-            // First step up to super classes, resolving them, since we depend on them
-            Cl superCl = this.classTree.getCl(this.superClass);
-            if ((superCl != null) && (superCl != ignoreCl))
-            {
-                superCl.resolveNameSpaceExcept(this);
-            }
-            for (String si : this.superInterfaces)
-            {
-                Cl interfaceItem = this.classTree.getCl(si);
-                if ((interfaceItem != null) && (interfaceItem != ignoreCl))
-                {
-                    interfaceItem.resolveNameSpaceExcept(this);
-                }
-            }
-
-            // Next, resolve ourself
-            if (!this.isResolved)
-            {
-                this.resolveThis();
-
-                // Signal class has been processed
-                this.isResolved = true;
-            }
-
-            // Finally step down to derived classes, resolving them
-            for (NameListDown nameListDown : this.nameListDowns)
-            {
-                Cl cl = (Cl)nameListDown;
-                if (cl != ignoreCl)
-                {
-                    cl.resolveNameSpaceExcept(this);
-                }
-            }
-        }
+        WalkFrame.walk(new NameSpaceFrame(this, ignoreCl));
     }
 
     /**
@@ -910,7 +828,6 @@ public class Cl extends PkCl implements NameListUp, NameListDown
         {
             String theInName = md.getInName();
             String theInDesc = md.getDescriptor();
-            String fullInName = md.getFullInName();
             if (!md.isFixed())
             {
                 // if we are a private or static or final method then dont check our children for a name
@@ -930,7 +847,8 @@ public class Cl extends PkCl implements NameListUp, NameListDown
                     }
                 }
 
-                if (checkDown)
+                // (no derived class can supply a name unless a member of the same family, or a class outside the JAR, has one)
+                if (checkDown && this.memberFamilies.isMethodReserved(theInName, theInDesc))
                 {
                     // Check for name reservation via derived classes
                     for (NameListDown nl : this.nameListDowns)
@@ -939,15 +857,7 @@ public class Cl extends PkCl implements NameListUp, NameListDown
                         if (theOutName != null)
                         {
                             md.setOutName(theOutName);
-                            if (theOutName.equals(theInName))
-                            {
-                                NameProvider.verboseLog("# Method " + fullInName + " unchanged from derived class");
-                            }
-                            else
-                            {
-                                NameProvider.verboseLog("# Method " + fullInName + " renamed to " + theOutName
-                                    + " from derived class");
-                            }
+                            NameProvider.verboseDecision(md, NameProvider.NameSource.DERIVED_CLASS);
                             if (NameProvider.fullMap)
                             {
                                 md.setOutput();
@@ -983,15 +893,7 @@ public class Cl extends PkCl implements NameListUp, NameListDown
                         {
                             md.setOutName(theOutName);
                             md.setIsOverride();
-                            if (theOutName.equals(theInName))
-                            {
-                                NameProvider.verboseLog("# Method " + fullInName + " unchanged from super class");
-                            }
-                            else
-                            {
-                                NameProvider.verboseLog("# Method " + fullInName + " renamed to " + theOutName
-                                    + " from super class");
-                            }
+                            NameProvider.verboseDecision(md, NameProvider.NameSource.SUPER_CLASS);
                             if (NameProvider.fullMap)
                             {
                                 md.setOutput();
@@ -1006,41 +908,26 @@ public class Cl extends PkCl implements NameListUp, NameListDown
                 {
                     md.setOutName(theOutName);
                     md.setFromScriptMap();
-                    if (theOutName.equals(theInName))
-                    {
-                        NameProvider.verboseLog("# Method " + fullInName + " unchanged from name maker");
-                    }
-                    else
-                    {
-                        NameProvider.verboseLog("# Method " + fullInName + " renamed to " + theOutName + " from name maker");
-                    }
+                    NameProvider.verboseDecision(md, NameProvider.NameSource.NAME_MAKER);
                 }
                 else
                 {
-                    NameProvider.verboseLog("# Method " + fullInName + " null from name maker");
+                    NameProvider.verboseDecision(md, NameProvider.NameSource.NO_NAME);
                 }
             }
             else
             {
                 if (md.isFromScriptMap())
                 {
-                    String theOutName = md.getOutName();
-                    if (theOutName.equals(theInName))
-                    {
-                        NameProvider.verboseLog("# Method " + fullInName + " unchanged from ScriptMap");
-                    }
-                    else
-                    {
-                        NameProvider.verboseLog("# Method " + fullInName + " renamed to " + theOutName + " from ScriptMap");
-                    }
+                    NameProvider.verboseDecision(md, NameProvider.NameSource.SCRIPT_MAP);
                 }
                 else if (md.isFromScript())
                 {
-                    NameProvider.verboseLog("# Method " + fullInName + " fixed from Script");
+                    NameProvider.verboseDecision(md, NameProvider.NameSource.SCRIPT);
                 }
                 else
                 {
-                    NameProvider.verboseLog("# Method " + fullInName + " fixed");
+                    NameProvider.verboseDecision(md, NameProvider.NameSource.FIXED);
                 }
             }
         }
@@ -1048,7 +935,6 @@ public class Cl extends PkCl implements NameListUp, NameListDown
         for (Fd fd : this.fds.values())
         {
             String theInName = fd.getInName();
-            String fullInName = fd.getFullInName();
             if (!fd.isFixed())
             {
                 // if we are a private or static or final field then dont check our children for a name
@@ -1067,7 +953,7 @@ public class Cl extends PkCl implements NameListUp, NameListDown
                         checkDown = false;
                     }
                 }
-                if (checkDown)
+                if (checkDown && this.memberFamilies.isFieldReserved(theInName))
                 {
                     // Check for name reservation via derived classes
                     for (NameListDown nl : this.nameListDowns)
@@ -1076,15 +962,7 @@ public class Cl extends PkCl implements NameListUp, NameListDown
                         if (theOutName != null)
                         {
                             fd.setOutName(theOutName);
-                            if (theOutName.equals(theInName))
-                            {
-                                NameProvider.verboseLog("# Field " + fullInName + " unchanged from derived class");
-                            }
-                            else
-                            {
-                                NameProvider.verboseLog("# Field " + fullInName + " renamed to " + theOutName
-                                    + " from derived class");
-                            }
+                            NameProvider.verboseDecision(fd, NameProvider.NameSource.DERIVED_CLASS);
                             if (NameProvider.fullMap)
                             {
                                 fd.setOutput();
@@ -1120,18 +998,10 @@ public class Cl extends PkCl implements NameListUp, NameListDown
                         {
                             fd.setOutName(theOutName);
                             fd.setIsOverride();
-                            if (theOutName.equals(theInName))
+                            NameProvider.verboseDecision(fd, NameProvider.NameSource.SUPER_CLASS);
+                            if (NameProvider.fullMap)
                             {
-                                NameProvider.verboseLog("# Field " + fullInName + " unchanged from super class");
-                            }
-                            else
-                            {
-                                NameProvider.verboseLog("# Field " + fullInName + " renamed to " + theOutName
-                                    + " from super class");
-                            }
-                            if (NameProvider.fullMap)
-                            {
-                                fd.setOutput();
+                                fd.setOutput();
                             }
                             continue nextField;
                         }
@@ -1143,44 +1013,32 @@ public class Cl extends PkCl implements NameListUp, NameListDown
                 {
                     fd.setOutName(theOutName);
                     fd.setFromScriptMap();
-                    if (theOutName.equals(theInName))
-                    {
-                        NameProvider.verboseLog("# Field " + fullInName + " unchanged from name maker");
-                    }
-                    else
-                    {
-                        NameProvider.verboseLog("# Field " + fullInName + " renamed to " + theOutName + " from name maker");
-                    }
+                    NameProvider.verboseDecision(fd, NameProvider.NameSource.NAME_MAKER);
                 }
                 else
                 {
-                    NameProvider.verboseLog("# Field " + fullInName + " null from name maker");
+                    NameProvider.verboseDecision(fd, NameProvider.NameSource.NO_NAME);
                 }
             }
             else
             {
                 if (fd.isFromScriptMap())
                 {
-                    String theOutName = fd.getOutName();
-                    if (theOutName.equals(theInName))
-                    {
-                        NameProvider.verboseLog("# Field " + fullInName + " unchanged from ScriptMap");
-                    }
-                    else
-                    {
-                        NameProvider.verboseLog("# Field " + fullInName + " renamed to " + theOutName + " from ScriptMap");
-                    }
+                    NameProvider.verboseDecision(fd, NameProvider.NameSource.SCRIPT_MAP);
                 }
                 else if (fd.isFromScript())
                 {
-                    NameProvider.verboseLog("# Field " + fullInName + " fixed from Script");
+                    NameProvider.verboseDecision(fd, NameProvider.NameSource.SCRIPT);
                 }
                 else
                 {
-                    NameProvider.verboseLog("# Field " + fullInName + " fixed");
+                    NameProvider.verboseDecision(fd, NameProvider.NameSource.FIXED);
                 }
             }
         }
+
+        // The names given here now reserve them for the rest of each family
+        this.memberFamilies.addNames(this);
     }
 
     /**
@@ -1191,37 +1049,7 @@ public class Cl extends PkCl implements NameListUp, NameListDown
     @Override
     public String getMethodOutNameUp(String name, String descriptor) throws ClassFileException
     {
-        // Check supers
-        for (NameListUp nl : this.nameListUps)
-        {
-            String superOutName = nl.getMethodOutNameUp(name, descriptor);
-            if (superOutName != null)
-            {
-                return superOutName;
-            }
-        }
-
-        // Check self
-        Md md = this.getMethod(name, descriptor);
-        if (md != null)
-        {
-            if (NameProvider.fixShadowed)
-            {
-                if (!Modifier.isPrivate(md.access) && !Modifier.isStatic(md.access) && !Modifier.isFinal(md.access))
-                {
-                    return md.getOutName();
-                }
-            }
-            else
-            {
-                if (!Modifier.isPrivate(md.access))
-                {
-                    return md.getOutName();
-                }
-            }
-        }
-
-        return null;
+        return this.getNameUp(new MethodLookup(name, descriptor, false));
     }
 
     /**
@@ -1232,37 +1060,7 @@ public class Cl extends PkCl implements NameListUp, NameListDown
     @Override
     public String getMethodObfNameUp(String name, String descriptor) throws ClassFileException
     {
-        // Check supers
-        for (NameListUp nl : this.nameListUps)
-        {
-            String superObfName = nl.getMethodObfNameUp(name, descriptor);
-            if (superObfName != null)
-            {
-                return superObfName;
-            }
-        }
-
-        // Check self
-        Md md = this.getMethod(name, descriptor);
-        if (md != null)
-        {
-            if (NameProvider.fixShadowed)
-            {
-                if (!Modifier.isPrivate(md.access) && !Modifier.isStatic(md.access) && !Modifier.isFinal(md.access))
-                {
-                    return md.getObfName();
-                }
-            }
-            else
-            {
-                if (!Modifier.isPrivate(md.access))
-                {
-                    return md.getObfName();
-                }
-            }
-        }
-
-        return null;
+        return this.getNameUp(new MethodLookup(name, descriptor, true));
     }
 
     /**
@@ -1273,37 +1071,7 @@ public class Cl extends PkCl implements NameListUp, NameListDown
     @Override
     public String getFieldOutNameUp(String name) throws ClassFileException
     {
-        // Check supers
-        for (NameListUp nl : this.nameListUps)
-        {
-            String superOutName = nl.getFieldOutNameUp(name);
-            if (superOutName != null)
-            {
-                return superOutName;
-            }
-        }
-
-        // Check self
-        Fd fd = this.getField(name);
-        if (fd != null)
-        {
-            if (NameProvider.fixShadowed)
-            {
-                if (!Modifier.isPrivate(fd.access) && !Modifier.isStatic(fd.access) && !Modifier.isFinal(fd.access))
-                {
-                    return fd.getOutName();
-                }
-            }
-            else
-            {
-                if (!Modifier.isPrivate(fd.access))
-                {
-                    return fd.getOutName();
-                }
-            }
-        }
-
-        return null;
+        return this.getNameUp(new FieldLookup(name, false));
     }
 
     /**
@@ -1314,37 +1082,19 @@ public class Cl extends PkCl implements NameListUp, NameListDown
     @Override
     public String getFieldObfNameUp(String name) throws ClassFileException
     {
-        // Check supers
-        for (NameListUp nl : this.nameListUps)
-        {
-            String superObfName = nl.getFieldObfNameUp(name);
-            if (superObfName != null)
-            {
-                return superObfName;
-            }
-        }
-
-        // Check self
-        Fd fd = this.getField(name);
-        if (fd != null)
-        {
-            if (NameProvider.fixShadowed)
-            {
-                if (!Modifier.isPrivate(fd.access) && !Modifier.isStatic(fd.access) && !Modifier.isFinal(fd.access))
-                {
-                    return fd.getObfName();
-                }
-            }
-            else
-            {
-                if (!Modifier.isPrivate(fd.access))
-                {
-                    return fd.getObfName();
-                }
-            }
-        }
+        return this.getNameUp(new FieldLookup(name, true));
+    }
 
-        return null;
+    /**
+     * Look for the member in the supers, and then in this class.
+     * 
+     * @param lookup
+     * @throws ClassFileException
+     */
+    private String getNameUp(MemberLookup lookup) throws ClassFileException
+    {
+        WalkFrame.walk(new UpFrame(this, lookup));
+        return lookup.found;
     }
 
     /**
@@ -1355,70 +1105,9 @@ public class Cl extends PkCl implements NameListUp, NameListDown
     @Override
     public String getMethodObfNameDown(Cl caller, String name, String descriptor) throws ClassFileException
     {
-        // Check ourself for an explicit 'do not obfuscate'
-        Md md = this.getMethod(name, descriptor);
-        if ((md != null) && md.isFixed())
-        {
-            return md.getOutName();
-        }
-
-        // Check our supers, except for our caller (special case if we are java/lang/Object)
-        String theObfName = null;
-        if (this.superClass != null)
-        {
-            Cl superClassItem = this.classTree.getCl(this.superClass);
-            if (superClassItem != caller)
-            {
-                NameListUp nl;
-                if (superClassItem != null)
-                {
-                    nl = superClassItem;
-                }
-                else
-                {
-                    nl = this.getExtNameListUp(this.superClass);
-                }
-                theObfName = nl.getMethodObfNameUp(name, descriptor);
-                if (theObfName != null)
-                {
-                    return theObfName;
-                }
-            }
-            for (String si : this.superInterfaces)
-            {
-                Cl interfaceItem = this.classTree.getCl(si);
-                if (interfaceItem != caller)
-                {
-                    NameListUp nl;
-                    if (interfaceItem != null)
-                    {
-                        nl = interfaceItem;
-                    }
-                    else
-                    {
-                        nl = this.getExtNameListUp(si);
-                    }
-                    theObfName = nl.getMethodObfNameUp(name, descriptor);
-                    if (theObfName != null)
-                    {
-                        return theObfName;
-                    }
-                }
-            }
-        }
-
-        // Check our derived classes
-        for (NameListDown nl : this.nameListDowns)
-        {
-            theObfName = nl.getMethodObfNameDown(this, name, descriptor);
-            if (theObfName != null)
-            {
-                return theObfName;
-            }
-        }
-
-        // No reservation found
-        return null;
+        MemberLookup lookup = new MethodLookup(name, descriptor, true);
+        WalkFrame.walk(new DownFrame(this, caller, lookup));
+        return lookup.found;
     }
 
     /**
@@ -1429,73 +1118,12 @@ public class Cl extends PkCl implements NameListUp, NameListDown
     @Override
     public String getFieldObfNameDown(Cl caller, String name) throws ClassFileException
     {
-        // Check ourself for an explicit 'do not obfuscate'
-        Fd fd = this.getField(name);
-        if ((fd != null) && fd.isFixed())
-        {
-            return fd.getOutName();
-        }
-
-        // Check our supers, except for our caller (special case if we are java/lang/Object)
-        String theObfName = null;
-        if (this.superClass != null)
-        {
-            Cl superClassItem = this.classTree.getCl(this.superClass);
-            if (superClassItem != caller)
-            {
-                NameListUp nl;
-                if (superClassItem != null)
-                {
-                    nl = superClassItem;
-                }
-                else
-                {
-                    nl = this.getExtNameListUp(this.superClass);
-                }
-                theObfName = nl.getFieldObfNameUp(name);
-                if (theObfName != null)
-                {
-                    return theObfName;
-                }
-            }
-            for (String si : this.superInterfaces)
-            {
-                Cl interfaceItem = this.classTree.getCl(si);
-                if (interfaceItem != caller)
-                {
-                    NameListUp nl;
-                    if (interfaceItem != null)
-                    {
-                        nl = interfaceItem;
-                    }
-                    else
-                    {
-                        nl = this.getExtNameListUp(si);
-                    }
-                    theObfName = nl.getFieldObfNameUp(name);
-                    if (theObfName != null)
-                    {
-                        return theObfName;
-                    }
-                }
-            }
-        }
-
-        // Check our derived classes
-        for (NameListDown nl : this.nameListDowns)
-        {
-            theObfName = nl.getFieldObfNameDown(this, name);
-            if (theObfName != null)
-            {
-                return theObfName;
-            }
-        }
-
-        // No reservation found
-        return null;
+        MemberLookup lookup = new FieldLookup(name, true);
+        WalkFrame.walk(new DownFrame(this, caller, lookup));
+        return lookup.found;
     }
 
-    private static Map<String, NameListUp> extNameListUpCache = new HashMap<String, NameListUp>();
+    private static ConcurrentMap<String, NameListUp> extNameListUpCache = new ConcurrentHashMap<String, NameListUp>();
 
     /**
      * Construct, or retrieve from cache, the NameListUp object for an external class/interface
@@ -1508,8 +1136,13 @@ public class Cl extends PkCl implements NameListUp, NameListDown
         NameListUp nl = Cl.extNameListUpCache.get(name);
         if (nl == null)
         {
+            // Name spaces resolved in parallel can race to construct the same one, so keep the first
             nl = new ExtNameListUp(name);
-            Cl.extNameListUpCache.put(name, nl);
+            NameListUp existing = Cl.extNameListUpCache.putIfAbsent(name, nl);
+            if (existing != null)
+            {
+                nl = existing;
+            }
         }
         return nl;
     }
@@ -1519,9 +1152,13 @@ public class Cl extends PkCl implements NameListUp, NameListDown
      */
     class ExtNameListUp implements NameListUp
     {
-        // Class's fully qualified name
-        private Class<?> extClass;
-        private List<Method> methods = null;
+        // Class's header information
+        private LibraryClass extClass;
+
+        /**
+         * Names and descriptors of the methods which derived classes must not rename
+         */
+        private volatile Set<String> methods = null;
 
         /**
          * Constructor
@@ -1531,11 +1168,8 @@ public class Cl extends PkCl implements NameListUp, NameListDown
          */
         public ExtNameListUp(String name) throws ClassFileException
         {
-            try
-            {
-                this.extClass = Class.forName(ClassFile.translate(name));
-            }
-            catch (ClassNotFoundException e)
+            this.extClass = Cl.this.classTree.getLibraryIndex().getClass(name);
+            if (this.extClass == null)
             {
                 throw new ClassFileException("ClassNotFound " + name);
             }
@@ -1561,18 +1195,19 @@ public class Cl extends PkCl implements NameListUp, NameListDown
         public String getMethodOutNameUp(String name, String descriptor) throws ClassFileException
         {
             // Get list of public/protected methods
-            if (this.methods == null)
+            Set<String> methods = this.methods;
+            if (methods == null)
             {
-                List<Method> allMethods = this.getAllDeclaredMethods(this.extClass);
-                this.methods = new ArrayList<Method>();
-                for (Method md : allMethods)
+                List<LibraryClass.Member> allMethods = Cl.this.classTree.getLibraryIndex().getAllDeclaredMethods(this.extClass);
+                methods = new HashSet<String>();
+                for (LibraryClass.Member md : allMethods)
                 {
-                    int modifiers = md.getModifiers();
+                    int modifiers = md.getAccess();
                     if (NameProvider.fixShadowed)
                     {
                         if (!Modifier.isPrivate(modifiers) && !Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers))
                         {
-                            this.methods.add(md);
+                            methods.add(md.getName() + md.getDescriptor());
                         }
 
                     }
@@ -1580,41 +1215,17 @@ public class Cl extends PkCl implements NameListUp, NameListDown
                     {
                         if (!Modifier.isPrivate(modifiers))
                         {
-                            this.methods.add(md);
+                            methods.add(md.getName() + md.getDescriptor());
                         }
                     }
                 }
             }
 
-            // Check each public/protected class method against the named one
-            nextMethod:
-            for (Method md : this.methods)
+            // Check the public/protected class methods for the named one
+            if (methods.contains(name + descriptor))
             {
-                if (name.equals(md.getName()))
-                {
-                    List<String> paramAndReturnNames = ClassFile.parseMethodDescriptor(descriptor);
-                    List<String> paramNames = paramAndReturnNames.subList(0, paramAndReturnNames.size() - 1);
-                    String returnName = paramAndReturnNames.get(paramAndReturnNames.size() - 1);
-                    List<Class<?>> paramTypes = Arrays.asList(md.getParameterTypes());
-                    Class<?> returnType = md.getReturnType();
-                    if (paramNames.size() == paramTypes.size())
-                    {
-                        for (int j = 0; j < paramNames.size(); j++)
-                        {
-                            if (!paramNames.get(j).equals(paramTypes.get(j).getName()))
-                            {
-                                continue nextMethod;
-                            }
-                        }
-                        if (!returnName.equals(returnType.getName()))
-                        {
-                            continue nextMethod;
-                        }
-
-                        // We have a match, and so the derived class method name must be made to match
-                        return name;
-                    }
-                }
+                // We have a match, and so the derived class method name must be made to match
+                return name;
             }
 
             // Method is not present
@@ -1636,12 +1247,12 @@ public class Cl extends PkCl implements NameListUp, NameListDown
         @Override
         public String getFieldOutNameUp(String name)
         {
-            // Use reflection to check class for field
-            Field field = this.getAllDeclaredField(this.extClass, name);
+            // Check class header information for field
+            LibraryClass.Member field = Cl.this.classTree.getLibraryIndex().getAllDeclaredField(this.extClass, name);
             if (field != null)
             {
                 // Field must be public or protected
-                int modifiers = field.getModifiers();
+                int modifiers = field.getAccess();
                 if (NameProvider.fixShadowed)
                 {
                     if (!Modifier.isPrivate(modifiers) && !Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers))
@@ -1661,75 +1272,494 @@ public class Cl extends PkCl implements NameListUp, NameListDown
             // Field is not present
             return null;
         }
+    }
+
+    /**
+     * Frame for resolving a name space: traverse one step in each direction from a class, first up to the super classes since
+     * the class depends on them, then resolving the class itself, and finally down to the derived classes. The class the
+     * step was taken from is not stepped back to.
+     */
+    private static class NameSpaceFrame extends WalkFrame
+    {
+        private Cl cl;
+        private Cl ignoreCl;
+        private boolean started = false;
+        private Iterator<String> supers = null;
+        private Iterator<NameListDown> derived = null;
 
         /**
-         * Get all methods (from supers too) regardless of access level
+         * Constructor
          * 
-         * @param theClass
+         * @param cl
+         * @param ignoreCl
          */
-        private List<Method> getAllDeclaredMethods(Class<?> theClass)
+        private NameSpaceFrame(Cl cl, Cl ignoreCl)
         {
-            List<Method> ma = new ArrayList<Method>();
+            this.cl = cl;
+            this.ignoreCl = ignoreCl;
+        }
 
-            // Get the public methods from all supers and interfaces up the tree
-            ma.addAll(Arrays.asList(theClass.getMethods()));
+        @Override
+        protected WalkFrame next() throws ClassFileException
+        {
+            if (!this.started)
+            {
+                this.started = true;
 
-            // Go up the super hierarchy, getting arrays of all methods (some redundancy here, but that's okay)
-            while (theClass != null)
+                // Special case: we are java/lang/Object, and nothing to do if already processed
+                if ((this.cl.superClass == null) || this.cl.isResolved)
+                {
+                    return null;
+                }
+
+                List<String> superNames = new ArrayList<String>();
+                superNames.add(this.cl.superClass);
+                superNames.addAll(this.cl.superInterfaces);
+                this.supers = superNames.iterator();
+            }
+
+            if (this.derived == null)
             {
-                ma.addAll(Arrays.asList(theClass.getDeclaredMethods()));
-                theClass = theClass.getSuperclass();
+                while (this.supers.hasNext())
+                {
+                    Cl superCl = this.cl.classTree.getCl(this.supers.next());
+                    if ((superCl != null) && (superCl != this.ignoreCl))
+                    {
+                        return new NameSpaceFrame(superCl, this.cl);
+                    }
+                }
+
+                // Resolve the class, unless reached again from one of its supers
+                if (!this.cl.isResolved)
+                {
+                    this.cl.resolveThis();
+
+                    // Signal class has been processed
+                    this.cl.isResolved = true;
+                }
+                this.derived = this.cl.nameListDowns.iterator();
             }
 
-            return ma;
+            while (this.derived.hasNext())
+            {
+                Cl derivedCl = (Cl)this.derived.next();
+                if (derivedCl != this.ignoreCl)
+                {
+                    return new NameSpaceFrame(derivedCl, this.cl);
+                }
+            }
+            return null;
         }
+    }
+
+    /**
+     * Frame for looking up a member in the super classes of a class: the supers are searched first, in order and each with
+     * its own supers before it, and then the class itself. The walk stops at the first name found.
+     */
+    private static class UpFrame extends WalkFrame
+    {
+        private Cl cl;
+        private MemberLookup lookup;
+        private Iterator<NameListUp> supers = null;
+
+        /**
+         * Constructor
+         * 
+         * @param cl
+         * @param lookup
+         */
+        private UpFrame(Cl cl, MemberLookup lookup)
+        {
+            this.cl = cl;
+            this.lookup = lookup;
+        }
+
+        @Override
+        protected WalkFrame next() throws ClassFileException
+        {
+            if (this.lookup.found != null)
+            {
+                return null;
+            }
+
+            // Check supers
+            if (this.supers == null)
+            {
+                this.supers = this.cl.nameListUps.iterator();
+            }
+            while (this.supers.hasNext())
+            {
+                NameListUp nl = this.supers.next();
+                if (nl instanceof Cl)
+                {
+                    return new UpFrame((Cl)nl, this.lookup);
+                }
+                this.lookup.found = this.lookup.getNameUp(nl);
+                if (this.lookup.found != null)
+                {
+                    return null;
+                }
+            }
+
+            // Check self
+            this.lookup.found = this.lookup.getInheritedName(this.cl);
+            return null;
+        }
+    }
+
+    /**
+     * Frame for looking up a reservation of a member down the class hierarchy: the class is checked for an explicit 'do not
+     * obfuscate', then its supers other than the caller, and then its derived classes. The walk stops at the first name found.
+     */
+    private static class DownFrame extends WalkFrame
+    {
+        private Cl cl;
+        private Cl caller;
+        private MemberLookup lookup;
+        private Iterator<NameListDown> derived = null;
 
         /**
-         * Get a specified field (from supers and interfaces too) regardless of access level
+         * Constructor
+         * 
+         * @param cl
+         * @param caller
+         * @param lookup
+         */
+        private DownFrame(Cl cl, Cl caller, MemberLookup lookup)
+        {
+            this.cl = cl;
+            this.caller = caller;
+            this.lookup = lookup;
+        }
+
+        @Override
+        protected WalkFrame next() throws ClassFileException
+        {
+            if (this.derived == null)
+            {
+                this.derived = this.cl.nameListDowns.iterator();
+
+                // Check ourself for an explicit 'do not obfuscate'
+                this.lookup.found = this.lookup.getFixedName(this.cl);
+                if (this.lookup.found != null)
+                {
+                    return null;
+                }
+
+                // Check our supers, except for our caller (special case if we are java/lang/Object)
+                if (this.cl.superClass != null)
+                {
+                    List<String> superNames = new ArrayList<String>();
+                    superNames.add(this.cl.superClass);
+                    superNames.addAll(this.cl.superInterfaces);
+                    for (String superName : superNames)
+                    {
+                        Cl superCl = this.cl.classTree.getCl(superName);
+                        if (superCl != this.caller)
+                        {
+                            NameListUp nl;
+                            if (superCl != null)
+                            {
+                                nl = superCl;
+                            }
+                            else
+                            {
+                                nl = this.cl.getExtNameListUp(superName);
+                            }
+                            this.lookup.found = this.lookup.getNameUp(nl);
+                            if (this.lookup.found != null)
+                            {
+                                return null;
+                            }
+                        }
+                    }
+                }
+            }
+
+            // Check our derived classes
+            if ((this.lookup.found == null) && this.derived.hasNext())
+            {
+                return new DownFrame((Cl)this.derived.next(), this.cl, this.lookup);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A method or field being looked up in the class hierarchy, and the name found for it.
+     */
+    private static abstract class MemberLookup
+    {
+        /**
+         * Name found, or null if none has been found yet
+         */
+        protected String found = null;
+
+        /**
+         * Is the member given the obfuscated name, rather than the output name, of the member found?
+         */
+        protected boolean obf;
+
+        /**
+         * Constructor
+         * 
+         * @param obf
+         */
+        protected MemberLookup(boolean obf)
+        {
+            this.obf = obf;
+        }
+
+        /**
+         * Get the name of the member from the list, including its supers, or null if no mapping exists.
+         * 
+         * @param nl
+         * @throws ClassFileException
+         */
+        protected abstract String getNameUp(NameListUp nl) throws ClassFileException;
+
+        /**
+         * Get the member declared by the class, or null if it has none.
+         * 
+         * @param cl
+         */
+        protected abstract MdFd getMember(Cl cl);
+
+        /**
+         * Get the name of the member declared by the class, if derived classes inherit it, or null otherwise.
+         * 
+         * @param cl
+         */
+        protected String getInheritedName(Cl cl)
+        {
+            MdFd member = this.getMember(cl);
+            if (member != null)
+            {
+                int access = member.getModifiers();
+                if (NameProvider.fixShadowed)
+                {
+                    if (!Modifier.isPrivate(access) && !Modifier.isStatic(access) && !Modifier.isFinal(access))
+                    {
+                        return this.obf ? member.getObfName() : member.getOutName();
+                    }
+                }
+                else
+                {
+                    if (!Modifier.isPrivate(access))
+                    {
+                        return this.obf ? member.getObfName() : member.getOutName();
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Get the name of the member declared by the class, if it is not to be obfuscated, or null otherwise.
+         * 
+         * @param cl
+         */
+        protected String getFixedName(Cl cl)
+        {
+            MdFd member = this.getMember(cl);
+            if ((member != null) && member.isFixed())
+            {
+                return member.getOutName();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Lookup of a method by name and descriptor.
+     */
+    private static class MethodLookup extends MemberLookup
+    {
+        private String name;
+        private String descriptor;
+
+        /**
+         * Constructor
          * 
-         * @param theClass
          * @param name
+         * @param descriptor
+         * @param obf
          */
-        private Field getAllDeclaredField(Class<?> theClass, String name)
+        private MethodLookup(String name, String descriptor, boolean obf)
         {
-            Class<?> origClass = theClass;
+            super(obf);
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+
+        @Override
+        protected String getNameUp(NameListUp nl) throws ClassFileException
+        {
+            return this.obf ? nl.getMethodObfNameUp(this.name, this.descriptor) : nl.getMethodOutNameUp(this.name,
+                this.descriptor);
+        }
+
+        @Override
+        protected MdFd getMember(Cl cl)
+        {
+            return cl.getMethod(this.name, this.descriptor);
+        }
+    }
+
+    /**
+     * Lookup of a field by name.
+     */
+    private static class FieldLookup extends MemberLookup
+    {
+        private String name;
+
+        /**
+         * Constructor
+         * 
+         * @param name
+         * @param obf
+         */
+        private FieldLookup(String name, boolean obf)
+        {
+            super(obf);
+            this.name = name;
+        }
+
+        @Override
+        protected String getNameUp(NameListUp nl) throws ClassFileException
+        {
+            return this.obf ? nl.getFieldObfNameUp(this.name) : nl.getFieldOutNameUp(this.name);
+        }
+
+        @Override
+        protected MdFd getMember(Cl cl)
+        {
+            return cl.getField(this.name);
+        }
+    }
+
+    /**
+     * Methods and fields of an inheritance name space, as families which share a name (and descriptor, for methods). A derived
+     * class can only supply a name for a member if some member of its family already has a name, or a class outside the JAR
+     * reserves it, so the search down the hierarchy is skipped for any other member.
+     */
+    private static class MemberFamilies
+    {
+        /**
+         * Families with a member which has a name
+         */
+        private Set<String> namedMethods = new HashSet<String>();
+        private Set<String> namedFields = new HashSet<String>();
+
+        /**
+         * Classes outside the JAR which the name space extends, and whether any of them could not be found
+         */
+        private List<NameListUp> extNameListUps = new ArrayList<NameListUp>();
+        private boolean isComplete = true;
 
-            // Check for field in supers
-            while (theClass != null)
+        /**
+         * Method and field names already checked against the classes outside the JAR
+         */
+        private Map<String, Boolean> extMethods = new HashMap<String, Boolean>();
+        private Map<String, Boolean> extFields = new HashMap<String, Boolean>();
+
+        /**
+         * Note the methods and fields of a class which have names.
+         * 
+         * @param cl
+         */
+        private void addNames(Cl cl)
+        {
+            for (Md md : cl.mds.values())
             {
-                Field field = null;
-                try
+                if (md.isFixed() || (md.getObfName() != null))
                 {
-                    field = theClass.getDeclaredField(name);
+                    this.namedMethods.add(md.getInName() + md.getDescriptor());
                 }
-                catch (NoSuchFieldException e)
+            }
+            for (Fd fd : cl.fds.values())
+            {
+                if (fd.isFixed() || (fd.getObfName() != null))
                 {
-                    // fall thru
+                    this.namedFields.add(fd.getInName());
                 }
-                if (field != null)
+            }
+        }
+
+        /**
+         * Could a class in the name space supply a name for the method?
+         * 
+         * @param name
+         * @param descriptor
+         * @throws ClassFileException
+         */
+        private boolean isMethodReserved(String name, String descriptor) throws ClassFileException
+        {
+            if (!this.isComplete)
+            {
+                return true;
+            }
+            String key = name + descriptor;
+            if (this.namedMethods.contains(key))
+            {
+                return true;
+            }
+            Boolean isExt = this.extMethods.get(key);
+            if (isExt == null)
+            {
+                isExt = Boolean.FALSE;
+                for (NameListUp nl : this.extNameListUps)
                 {
-                    return field;
+                    if (nl.getMethodObfNameUp(name, descriptor) != null)
+                    {
+                        isExt = Boolean.TRUE;
+                        break;
+                    }
                 }
-                theClass = theClass.getSuperclass();
+                this.extMethods.put(key, isExt);
             }
+            return isExt.booleanValue();
+        }
 
-            // Check for public field in supers and interfaces (some redundancy here, but that's okay)
-            try
+        /**
+         * Could a class in the name space supply a name for the field?
+         * 
+         * @param name
+         * @throws ClassFileException
+         */
+        private boolean isFieldReserved(String name) throws ClassFileException
+        {
+            if (!this.isComplete)
             {
-                return origClass.getField(name);
+                return true;
             }
-            catch (NoSuchFieldException e)
+            if (this.namedFields.contains(name))
             {
-                return null;
+                return true;
+            }
+            Boolean isExt = this.extFields.get(name);
+            if (isExt == null)
+            {
+                isExt = Boolean.FALSE;
+                for (NameListUp nl : this.extNameListUps)
+                {
+                    if (nl.getFieldObfNameUp(name) != null)
+                    {
+                        isExt = Boolean.TRUE;
+                        break;
+                    }
+                }
+                this.extFields.put(name, isExt);
             }
+            return isExt.booleanValue();
         }
     }
 
     /**
-     * Construct and return the full obfuscated name of the entry.
+     * Construct the full obfuscated name of the entry.
      */
     @Override
-    public String getFullOutName()
+    protected String buildFullOutName()
     {
         String repackageName = this.getRepackageName();
 
@@ -1738,7 +1768,7 @@ public class Cl extends PkCl implements NameListUp, NameListDown
             return repackageName;
         }
 
-        return super.getFullOutName();
+        return super.buildFullOutName();
     }
 
     public Iterator<Cl> getDownClasses()
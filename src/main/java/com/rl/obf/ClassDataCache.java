@@ -0,0 +1,191 @@
+/* ===========================================================================
+ * $RCSfile: ClassDataCache.java,v $
+ * ===========================================================================
+ *
+ * RetroGuard -- an obfuscation package for Java classfiles.
+ *
+ * This program can be redistributed and/or modified under the terms of the
+ * Version 2 of the GNU General Public License as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+
+package com.rl.obf;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Store for the raw bytes of the class files read while building the class tree, so that the remap pass does not need to
+ * decompress the input Jar a second time. Data is held in memory up to a budget, and spilled to a temporary file beyond it.
+ */
+public class ClassDataCache
+{
+    // Constants -------------------------------------------------------------
+    private static final String SPILL_PREFIX = "retroguard";
+    private static final String SPILL_SUFFIX = ".tmp";
+
+
+    // Fields ----------------------------------------------------------------
+    /**
+     * Maximum number of bytes to hold in memory
+     */
+    private long budget;
+
+    /**
+     * Number of bytes currently held in memory
+     */
+    private long used = 0;
+
+    /**
+     * Class data held in memory, by Jar entry name
+     */
+    private Map<String, byte[]> inMemory = new HashMap<String, byte[]>();
+
+    /**
+     * Offset and length of the class data in the spill file, by Jar entry name
+     */
+    private Map<String, long[]> spilled = new HashMap<String, long[]>();
+
+    private File spillFile = null;
+    private RandomAccessFile spill = null;
+
+
+    // Class Methods ---------------------------------------------------------
+    /**
+     * Read the entire contents of a stream, whose length may be unknown (-1).
+     * 
+     * @param in
+     * @param size
+     * @throws IOException
+     */
+    public static byte[] readFully(InputStream in, long size) throws IOException
+    {
+        if (size >= 0)
+        {
+            byte[] bytes = new byte[(int)size];
+            new DataInputStream(in).readFully(bytes);
+            return bytes;
+        }
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int len;
+        while ((len = in.read(buf)) != -1)
+        {
+            bout.write(buf, 0, len);
+        }
+        return bout.toByteArray();
+    }
+
+
+    // Instance Methods ------------------------------------------------------
+    /**
+     * Constructor
+     * 
+     * @param budget
+     */
+    public ClassDataCache(long budget)
+    {
+        this.budget = budget;
+    }
+
+    /**
+     * Store the data for a Jar entry.
+     * 
+     * @param name
+     * @param data
+     * @throws IOException
+     */
+    public void put(String name, byte[] data) throws IOException
+    {
+        this.remove(name);
+        if (this.used + data.length <= this.budget)
+        {
+            this.inMemory.put(name, data);
+            this.used += data.length;
+        }
+        else
+        {
+            if (this.spill == null)
+            {
+                this.spillFile = File.createTempFile(ClassDataCache.SPILL_PREFIX, ClassDataCache.SPILL_SUFFIX);
+                this.spillFile.deleteOnExit();
+                this.spill = new RandomAccessFile(this.spillFile, "rw");
+            }
+            long offset = this.spill.length();
+            this.spill.seek(offset);
+            this.spill.write(data);
+            this.spilled.put(name, new long[]{offset, data.length});
+        }
+    }
+
+    /**
+     * Return the data for a Jar entry, or null if it was not stored.
+     * 
+     * @param name
+     * @throws IOException
+     */
+    public byte[] get(String name) throws IOException
+    {
+        byte[] data = this.inMemory.get(name);
+        if (data == null)
+        {
+            long[] location = this.spilled.get(name);
+            if (location != null)
+            {
+                data = new byte[(int)location[1]];
+                this.spill.seek(location[0]);
+                this.spill.readFully(data);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Forget the data for a Jar entry.
+     * 
+     * @param name
+     */
+    public void remove(String name)
+    {
+        byte[] data = this.inMemory.remove(name);
+        if (data != null)
+        {
+            this.used -= data.length;
+        }
+        this.spilled.remove(name);
+    }
+
+    /**
+     * Release all data, and delete the spill file.
+     */
+    public void close()
+    {
+        this.inMemory.clear();
+        this.spilled.clear();
+        this.used = 0;
+        if (this.spill != null)
+        {
+            try
+            {
+                this.spill.close();
+            }
+            catch (IOException e)
+            {
+                // ignore
+            }
+            this.spill = null;
+        }
+        if (this.spillFile != null)
+        {
+            this.spillFile.delete();
+            this.spillFile = null;
+        }
+    }
+}
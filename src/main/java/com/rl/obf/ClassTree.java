@@ -22,6 +22,8 @@ package com.rl.obf;
 import java.io.*;
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import com.rl.MapSignatureAdapter;
 import com.rl.NameProvider;
@@ -49,6 +51,7 @@ public class ClassTree implements NameMapper, ClassConstants
         "# obfuscated version at runtime. Please review your source code to ensure";
     private static final String LOG_DANGER_HEADER3 =
         "# these methods do not act on classes in the obfuscated Jar file.";
+    private static final int NAME_SPACE_RUNS_PER_THREAD = 4;
 
 
     // Fields ----------------------------------------------------------------
@@ -62,6 +65,34 @@ public class ClassTree implements NameMapper, ClassConstants
      */
     private Pk root = null;
 
+    /**
+     * Every class (including placeholders) and package in the database, by fully qualified name; package names are followed by
+     * a package separator
+     */
+    private Map<String, Cl> clIndex = new HashMap<String, Cl>();
+    private Map<String, Pk> pkIndex = new HashMap<String, Pk>();
+
+    /**
+     * Classes and interfaces outside the database
+     */
+    private LibraryIndex libraryIndex;
+
+    /**
+     * Results of matchWildcards, by query key
+     */
+    private Map<String, WildcardQuery> wildcardMatches = new HashMap<String, WildcardQuery>();
+
+    /**
+     * Every class in the database which extends or implements a class or interface, directly or indirectly, by the name of
+     * that type (in or out of the database), built on first use
+     */
+    private Map<String, Set<Cl>> subtypeIndex = null;
+
+    /**
+     * Incremented whenever an output name or the tree structure changes, to invalidate cached full names
+     */
+    private AtomicInteger nameVersion = new AtomicInteger();
+
     // Class methods ---------------------------------------------------------
     /**
      * Return a fully qualified name broken into package/class segments.
@@ -119,10 +150,37 @@ public class ClassTree implements NameMapper, ClassConstants
     // Instance Methods ------------------------------------------------------
     /**
      * Constructor
+     * 
+     * @param libraryIndex
      */
-    public ClassTree()
+    public ClassTree(LibraryIndex libraryIndex)
     {
         this.root = Pk.createRoot(this);
+        this.libraryIndex = libraryIndex;
+    }
+
+    /**
+     * Return the current version of the names in the tree.
+     */
+    public int getNameVersion()
+    {
+        return this.nameVersion.get();
+    }
+
+    /**
+     * Signal that an output name or the tree structure has changed.
+     */
+    public void namesChanged()
+    {
+        this.nameVersion.incrementAndGet();
+    }
+
+    /**
+     * Return the index of classes and interfaces outside the database.
+     */
+    public LibraryIndex getLibraryIndex()
+    {
+        return this.libraryIndex;
     }
 
     /**
@@ -193,11 +251,12 @@ public class ClassTree implements NameMapper, ClassConstants
      * @param cf
      * @throws ClassFileException
      */
-    public void addClassFile(ClassFile cf) throws ClassFileException
+    public void addClassFile(ClassHeader cf) throws ClassFileException
     {
-        // Add the fully qualified class name
+        // Add the fully qualified class name, indexing each level by its name
         TreeItem ti = this.root;
         String className = cf.getName();
+        StringBuilder path = new StringBuilder();
         for (Iterator<SimpleName> nameIter = ClassTree.getNameList(className).iterator(); nameIter.hasNext();)
         {
             SimpleName simpleName = nameIter.next();
@@ -206,6 +265,8 @@ public class ClassTree implements NameMapper, ClassConstants
             {
                 Pk pk = (Pk)ti;
                 ti = pk.addPackage(name);
+                path.append(name).append(ClassTree.PACKAGE_LEVEL);
+                this.pkIndex.put(path.toString(), (Pk)ti);
             }
             else if (simpleName.isAsClass())
             {
@@ -219,6 +280,9 @@ public class ClassTree implements NameMapper, ClassConstants
                 {
                     ti = pkCl.addClass(name, cf.getSuper(), cf.getInterfaces(), cf.getModifiers());
                 }
+                path.append(name);
+                this.clIndex.put(path.toString(), (Cl)ti);
+                path.append(ClassTree.CLASS_LEVEL);
             }
             else
             {
@@ -232,13 +296,13 @@ public class ClassTree implements NameMapper, ClassConstants
             Cl cl = (Cl)ti;
 
             // Add the class's methods to the database
-            for (MethodInfo mi : cf.getMethods())
+            for (ClassHeader.Member mi : cf.getMethods())
             {
                 cl.addMethod(cf, mi);
             }
 
             // Add the class's fields to the database
-            for (FieldInfo fi : cf.getFields())
+            for (ClassHeader.Member fi : cf.getFields())
             {
                 cl.addField(cf, fi);
             }
@@ -346,9 +410,10 @@ public class ClassTree implements NameMapper, ClassConstants
         {
             throw new ClassFileException("ClassNotFound");
         }
+        Set<Cl> subtypes = (extendsName == null) ? null : this.getSubtypes(extendsName);
         for (Cl cl : classes)
         {
-            if (((extendsName == null) || cl.hasAsSuperOrInterface(extendsName))
+            if (((subtypes == null) || subtypes.contains(cl))
                 && cl.modifiersMatchMask(accessMask, accessSetting))
             {
                 this.retainHierarchy(cl, invert);
@@ -426,10 +491,11 @@ public class ClassTree implements NameMapper, ClassConstants
         {
             throw new ClassFileException("MethodNotFound");
         }
+        Set<Cl> subtypes = (extendsName == null) ? null : this.getSubtypes(extendsName);
         for (Md md : methods)
         {
             Cl thisCl = (Cl)md.getParent();
-            if (((extendsName == null) || thisCl.hasAsSuperOrInterface(extendsName))
+            if (((subtypes == null) || subtypes.contains(thisCl))
                 && md.modifiersMatchMask(accessMask, accessSetting))
             {
                 if (invert)
@@ -470,10 +536,11 @@ public class ClassTree implements NameMapper, ClassConstants
         {
             throw new ClassFileException("FieldNotFound");
         }
+        Set<Cl> subtypes = (extendsName == null) ? null : this.getSubtypes(extendsName);
         for (Fd fd : fields)
         {
             Cl thisCl = (Cl)fd.getParent();
-            if (((extendsName == null) || thisCl.hasAsSuperOrInterface(extendsName))
+            if (((subtypes == null) || subtypes.contains(thisCl))
                 && fd.modifiersMatchMask(accessMask, accessSetting))
             {
                 if (invert)
@@ -678,15 +745,36 @@ public class ClassTree implements NameMapper, ClassConstants
                 cl.setupNameListDowns();
             }
         });
-        Cl.nameSpace = 0;
+
+        // Split the classes into inheritance name spaces, which share no names so can be resolved independently, in the
+        // order the walk would have resolved them
+        final List<Cl> nameSpaces = new ArrayList<Cl>();
+        final List<Integer> sizes = new ArrayList<Integer>();
         this.walkTree(new TreeAction()
         {
             @Override
             public void classAction(Cl cl) throws ClassFileException
             {
-                cl.resolveOptimally();
+                int size = cl.indexNameSpace();
+                if (size > 0)
+                {
+                    nameSpaces.add(cl);
+                    sizes.add(Integer.valueOf(size));
+                }
             }
         });
+
+        if ((NameProvider.threads > 1) && (nameSpaces.size() > 1))
+        {
+            this.resolveNameSpacesInParallel(nameSpaces, sizes);
+        }
+        else
+        {
+            for (Cl cl : nameSpaces)
+            {
+                cl.resolveOptimally();
+            }
+        }
     }
 
     /**
@@ -698,6 +786,123 @@ public class ClassTree implements NameMapper, ClassConstants
         return this.retainAttrs;
     }
 
+    /**
+     * Match the wildcarded class, method and field specifiers of a list of script entries in a single walk of the tree, and
+     * hold the results for getClList, getMdList and getFdList until clearWildcardMatches is called. The results depend only on
+     * the names in the tree, so may be computed ahead of the entries being applied in order.
+     * 
+     * @param entries
+     * @throws ClassFileException
+     */
+    public void matchWildcards(List<RgsEntry> entries) throws ClassFileException
+    {
+        final List<WildcardQuery> queries = new ArrayList<WildcardQuery>();
+        for (RgsEntry entry : entries)
+        {
+            RgsEntryType type = null;
+            switch (entry.type)
+            {
+                case CLASS:
+                case NOT_CLASS:
+                    type = RgsEntryType.CLASS;
+                    break;
+
+                case METHOD:
+                case NOT_METHOD:
+                    type = RgsEntryType.METHOD;
+                    break;
+
+                case FIELD:
+                case NOT_FIELD:
+                    type = RgsEntryType.FIELD;
+                    break;
+
+                default:
+                    continue;
+            }
+            String key = ClassTree.getWildcardKey(type, entry.name, entry.descriptor);
+            if ((key != null) && !this.wildcardMatches.containsKey(key))
+            {
+                WildcardQuery query = new WildcardQuery(type, entry.name, entry.descriptor);
+                this.wildcardMatches.put(key, query);
+                queries.add(query);
+            }
+        }
+        if (queries.size() == 0)
+        {
+            return;
+        }
+
+        this.walkQueries(this.root, 0, queries);
+    }
+
+    /**
+     * Forget the results of matchWildcards.
+     */
+    public void clearWildcardMatches()
+    {
+        this.wildcardMatches.clear();
+    }
+
+    /**
+     * Return the key for a wildcard query, or null if the specifier has no wildcards.
+     * 
+     * @param type
+     * @param fullName
+     * @param descriptor
+     */
+    private static String getWildcardKey(RgsEntryType type, String fullName, String descriptor)
+    {
+        switch (type)
+        {
+            case CLASS:
+                if (fullName.indexOf('*') != -1)
+                {
+                    return "C" + fullName;
+                }
+                break;
+
+            case METHOD:
+                if ((fullName.indexOf('*') != -1) || (descriptor.indexOf('*') != -1))
+                {
+                    return "M" + fullName + " " + descriptor;
+                }
+                break;
+
+            case FIELD:
+                if (fullName.indexOf('*') != -1)
+                {
+                    return "F" + fullName + " " + descriptor;
+                }
+                break;
+
+            default:
+                break;
+        }
+        return null;
+    }
+
+    /**
+     * Return the items matching a wildcard query, from the results of matchWildcards or by walking the tree.
+     * 
+     * @param type
+     * @param key
+     * @param fullName
+     * @param descriptor
+     * @throws ClassFileException
+     */
+    private List<TreeItem> getWildcardMatches(RgsEntryType type, String key, String fullName, String descriptor)
+        throws ClassFileException
+    {
+        WildcardQuery query = this.wildcardMatches.get(key);
+        if (query == null)
+        {
+            query = new WildcardQuery(type, fullName, descriptor);
+            this.walkQueries(this.root, 0, Collections.singletonList(query));
+        }
+        return query.matches;
+    }
+
     /**
      * Get classes in tree from the fully qualified name
      * (can be wildcarded).
@@ -707,42 +912,14 @@ public class ClassTree implements NameMapper, ClassConstants
      */
     public List<Cl> getClList(String fullName) throws ClassFileException
     {
-        final List<Cl> list = new ArrayList<Cl>();
+        List<Cl> list = new ArrayList<Cl>();
         // Wildcard? then return list of all matching classes (including inner)
-        if (fullName.indexOf('*') != -1)
+        String key = ClassTree.getWildcardKey(RgsEntryType.CLASS, fullName, null);
+        if (key != null)
         {
-            // Old !a/b/* wildcard syntax, for backward compatibility
-            // (acts as if every * becomes a ** in new-style match)
-            if (fullName.indexOf('!') == 0)
+            for (TreeItem ti : this.getWildcardMatches(RgsEntryType.CLASS, key, fullName, null))
             {
-                final String fName = fullName.substring(1);
-                this.walkTree(new TreeAction()
-                {
-                    @Override
-                    public void classAction(Cl cl)
-                    {
-                        if (cl.isOldStyleMatch(fName))
-                        {
-                            list.add(cl);
-                        }
-                    }
-                });
-            }
-            // New a/b/** wildcard syntax
-            else
-            {
-                final String fName = fullName;
-                this.walkTree(new TreeAction()
-                {
-                    @Override
-                    public void classAction(Cl cl)
-                    {
-                        if (cl.isWildcardMatch(fName))
-                        {
-                            list.add(cl);
-                        }
-                    }
-                });
+                list.add((Cl)ti);
             }
         }
         else
@@ -766,43 +943,14 @@ public class ClassTree implements NameMapper, ClassConstants
      */
     public List<Md> getMdList(String fullName, String descriptor) throws ClassFileException
     {
-        final List<Md> list = new ArrayList<Md>();
-        final String fDesc = descriptor;
+        List<Md> list = new ArrayList<Md>();
         // Wildcard? then return list of all matching methods
-        if ((fullName.indexOf('*') != -1) || (descriptor.indexOf('*') != -1))
+        String key = ClassTree.getWildcardKey(RgsEntryType.METHOD, fullName, descriptor);
+        if (key != null)
         {
-            // Old !a/b/* wildcard syntax, for backward compatibility
-            // (acts as if every * becomes a ** in new-style match)
-            if (fullName.indexOf('!') == 0)
+            for (TreeItem ti : this.getWildcardMatches(RgsEntryType.METHOD, key, fullName, descriptor))
             {
-                final String fName = fullName.substring(1);
-                this.walkTree(new TreeAction()
-                {
-                    @Override
-                    public void methodAction(Md md)
-                    {
-                        if (md.isOldStyleMatch(fName, fDesc))
-                        {
-                            list.add(md);
-                        }
-                    }
-                });
-            }
-            // New a/b/** wildcard syntax
-            else
-            {
-                final String fName = fullName;
-                this.walkTree(new TreeAction()
-                {
-                    @Override
-                    public void methodAction(Md md)
-                    {
-                        if (md.isWildcardMatch(fName, fDesc))
-                        {
-                            list.add(md);
-                        }
-                    }
-                });
+                list.add((Md)ti);
             }
         }
         else
@@ -825,43 +973,14 @@ public class ClassTree implements NameMapper, ClassConstants
      */
     public List<Fd> getFdList(String fullName, String descriptor) throws ClassFileException
     {
-        final List<Fd> list = new ArrayList<Fd>();
-        // Wildcard? then return list of all matching methods
-        if (fullName.indexOf('*') != -1)
+        List<Fd> list = new ArrayList<Fd>();
+        // Wildcard? then return list of all matching fields
+        String key = ClassTree.getWildcardKey(RgsEntryType.FIELD, fullName, descriptor);
+        if (key != null)
         {
-            // Old !a/b/* wildcard syntax, for backward compatibility
-            // (acts as if every * becomes a ** in new-style match)
-            if (fullName.indexOf('!') == 0)
-            {
-                final String fName = fullName.substring(1);
-                this.walkTree(new TreeAction()
-                {
-                    @Override
-                    public void fieldAction(Fd fd)
-                    {
-                        if (fd.isOldStyleMatch(fName))
-                        {
-                            list.add(fd);
-                        }
-                    }
-                });
-            }
-            // New a/b/** wildcard syntax
-            else
+            for (TreeItem ti : this.getWildcardMatches(RgsEntryType.FIELD, key, fullName, descriptor))
             {
-                final String fName = fullName;
-                final String fDesc = descriptor;
-                this.walkTree(new TreeAction()
-                {
-                    @Override
-                    public void fieldAction(Fd fd)
-                    {
-                        if (fd.isWildcardMatch(fName, fDesc))
-                        {
-                            list.add(fd);
-                        }
-                    }
-                });
+                list.add((Fd)ti);
             }
         }
         else
@@ -883,6 +1002,18 @@ public class ClassTree implements NameMapper, ClassConstants
      */
     public Cl getCl(String fullName) throws ClassFileException
     {
+        // The index holds every class and placeholder, so only names that do not split cleanly into package and class levels
+        // need to walk the tree
+        if ((fullName != null) && (fullName.length() > 0)
+            && (fullName.charAt(fullName.length() - 1) != ClassTree.PACKAGE_LEVEL))
+        {
+            int posC = fullName.indexOf(ClassTree.CLASS_LEVEL);
+            if ((posC == -1) || (fullName.indexOf(ClassTree.PACKAGE_LEVEL, posC) == -1))
+            {
+                return this.clIndex.get(fullName);
+            }
+        }
+
         TreeItem ti = this.root;
         for (SimpleName simpleName : ClassTree.getNameList(fullName))
         {
@@ -928,6 +1059,20 @@ public class ClassTree implements NameMapper, ClassConstants
      */
     public Pk getPk(String fullName) throws ClassFileException
     {
+        // Use the index, except for names with class levels or a trailing package separator, which need to walk the tree
+        if (fullName != null)
+        {
+            if (fullName.length() == 0)
+            {
+                return this.root;
+            }
+            if ((fullName.indexOf(ClassTree.CLASS_LEVEL) == -1)
+                && (fullName.charAt(fullName.length() - 1) != ClassTree.PACKAGE_LEVEL))
+            {
+                return this.pkIndex.get(fullName + ClassTree.PACKAGE_LEVEL);
+            }
+        }
+
         TreeItem ti = this.root;
         for (SimpleName simpleName : ClassTree.getNameList(fullName))
         {
@@ -1053,33 +1198,13 @@ public class ClassTree implements NameMapper, ClassConstants
         String outName = methodName;
         if (!methodName.equals("<init>"))
         {
-            Stack<Cl> s = new Stack<Cl>();
-            Cl nextCl = this.getCl(className);
-            if (nextCl != null)
-            {
-                s.push(nextCl);
-            }
-            while (!s.empty())
+            Cl cl = this.getCl(className);
+            if (cl != null)
             {
-                Cl cl = s.pop();
-                Md md = cl.getMethod(methodName, descriptor);
+                Md md = cl.resolveMethod(methodName, descriptor);
                 if (md != null)
                 {
                     outName = md.getOutName();
-                    break;
-                }
-
-                Cl superCl = cl.getSuperCl();
-                if (superCl != null)
-                {
-                    s.push(superCl);
-                }
-                for (Cl intfCl : cl.getSuperInterfaces())
-                {
-                    if (intfCl != null)
-                    {
-                        s.push(intfCl);
-                    }
                 }
             }
         }
@@ -1098,33 +1223,13 @@ public class ClassTree implements NameMapper, ClassConstants
         String outName = fieldName;
         if (!fieldName.equals("<init>"))
         {
-            Stack<Cl> s = new Stack<Cl>();
-            Cl nextCl = this.getCl(className);
-            if (nextCl != null)
-            {
-                s.push(nextCl);
-            }
-            while (!s.empty())
+            Cl cl = this.getCl(className);
+            if (cl != null)
             {
-                Cl cl = s.pop();
-                Fd fd = cl.getField(fieldName);
+                Fd fd = cl.resolveField(fieldName);
                 if (fd != null)
                 {
                     outName = fd.getOutName();
-                    break;
-                }
-
-                Cl superCl = cl.getSuperCl();
-                if (superCl != null)
-                {
-                    s.push(superCl);
-                }
-                for (Cl intfCl : cl.getSuperInterfaces())
-                {
-                    if (intfCl != null)
-                    {
-                        s.push(intfCl);
-                    }
                 }
             }
         }
@@ -1274,7 +1379,12 @@ public class ClassTree implements NameMapper, ClassConstants
             log.println("#");
             log.println(ClassTree.LOG_PRE_UNOBFUSCATED);
             log.println("#");
-            this.walkTree(new TreeAction()
+
+            // The reserved names, the name mappings and the output mappings share one walk of the tree, with the name
+            // mappings held back until the reserved names are all written
+            StringWriter maps = new StringWriter();
+            final PrintWriter mapLog = new PrintWriter(maps);
+            TreeAction reserved = new TreeAction()
             {
                 @Override
                 public void classAction(Cl cl)
@@ -1311,19 +1421,15 @@ public class ClassTree implements NameMapper, ClassConstants
                 {
                     // do nothing
                 }
-            });
-            log.println("#");
-            log.println("#");
-            log.println(ClassTree.LOG_PRE_OBFUSCATED);
-            log.println("#");
-            this.walkTree(new TreeAction()
+            };
+            TreeAction mapped = new TreeAction()
             {
                 @Override
                 public void classAction(Cl cl)
                 {
                     if (!cl.isFromScript())
                     {
-                        log.println(RgsEntryType.CLASS_MAP + " " + cl.getFullInName() + " " + cl.getOutName());
+                        mapLog.println(RgsEntryType.CLASS_MAP + " " + cl.getFullInName() + " " + cl.getOutName());
                     }
                 }
 
@@ -1332,7 +1438,7 @@ public class ClassTree implements NameMapper, ClassConstants
                 {
                     if (!md.isFromScript())
                     {
-                        log.println(RgsEntryType.METHOD_MAP + " " + md.getFullInName() + " " + md.getDescriptor() + " "
+                        mapLog.println(RgsEntryType.METHOD_MAP + " " + md.getFullInName() + " " + md.getDescriptor() + " "
                             + md.getOutName());
                     }
                 }
@@ -1342,7 +1448,7 @@ public class ClassTree implements NameMapper, ClassConstants
                 {
                     if (!fd.isFromScript())
                     {
-                        log.println(RgsEntryType.FIELD_MAP + " " + fd.getFullInName() + " " + fd.getOutName());
+                        mapLog.println(RgsEntryType.FIELD_MAP + " " + fd.getFullInName() + " " + fd.getOutName());
                     }
                 }
 
@@ -1353,17 +1459,16 @@ public class ClassTree implements NameMapper, ClassConstants
                     {
                         if (pk.getRepackageName() != null)
                         {
-                            log.println(RgsEntryType.REPACKAGE_MAP + " " + pk.getFullInName(true) + " " + pk.getRepackageName(true));
+                            mapLog.println(RgsEntryType.REPACKAGE_MAP + " " + pk.getFullInName(true) + " " + pk.getRepackageName(true));
                         }
                         else
                         {
-                            log.println(RgsEntryType.PACKAGE_MAP + " " + pk.getFullInName(true) + " " + pk.getOutName(true));
+                            mapLog.println(RgsEntryType.PACKAGE_MAP + " " + pk.getFullInName(true) + " " + pk.getOutName(true));
                         }
                     }
                 }
-            });
-
-            this.walkTree(new TreeAction()
+            };
+            TreeAction output = new TreeAction()
             {
                 @Override
                 public void classAction(Cl cl)
@@ -1400,7 +1505,15 @@ public class ClassTree implements NameMapper, ClassConstants
                         NameProvider.outputPackage(pk);
                     }
                 }
-            });
+            };
+            this.walkTree(reserved, mapped, output);
+
+            log.println("#");
+            log.println("#");
+            log.println(ClassTree.LOG_PRE_OBFUSCATED);
+            log.println("#");
+            mapLog.flush();
+            log.print(maps.toString());
         }
         catch (ClassFileException e)
         {
@@ -1410,6 +1523,123 @@ public class ClassTree implements NameMapper, ClassConstants
 
 
     // Private Methods -------------------------------------------------------
+    /**
+     * Resolve inheritance name spaces on a pool of worker threads, in runs of consecutive name spaces. The unique names given
+     * are numbered, and the log written, in the order of the name spaces, so the results are the same as resolving them one
+     * after another.
+     * 
+     * @param nameSpaces
+     * @param sizes
+     * @throws ClassFileException
+     */
+    private void resolveNameSpacesInParallel(List<Cl> nameSpaces, List<Integer> sizes) throws ClassFileException
+    {
+        int total = 0;
+        for (Integer size : sizes)
+        {
+            total += size.intValue();
+        }
+        int runSize = Math.max(1, total / (NameProvider.threads * ClassTree.NAME_SPACE_RUNS_PER_THREAD));
+
+        List<FutureTask<NameSpaceRun>> tasks = new ArrayList<FutureTask<NameSpaceRun>>();
+        List<NameSpaceRun> runs = new ArrayList<NameSpaceRun>();
+        Map<String, String> finalNames = new IdentityHashMap<String, String>();
+        Throwable failure = null;
+        ExecutorService executor = Executors.newFixedThreadPool(NameProvider.threads);
+        try
+        {
+            int start = 0;
+            int size = 0;
+            for (int i = 0; i < nameSpaces.size(); i++)
+            {
+                size += sizes.get(i).intValue();
+                if ((size >= runSize) || (i == nameSpaces.size() - 1))
+                {
+                    FutureTask<NameSpaceRun> task = new FutureTask<NameSpaceRun>(new NameSpaceRun(nameSpaces.subList(start,
+                        i + 1)));
+                    executor.execute(task);
+                    tasks.add(task);
+                    start = i + 1;
+                    size = 0;
+                }
+            }
+
+            // Number the names in order, up to the first run which failed
+            for (FutureTask<NameSpaceRun> task : tasks)
+            {
+                NameSpaceRun run;
+                try
+                {
+                    run = task.get();
+                }
+                catch (InterruptedException e)
+                {
+                    throw new ClassFileException("Interrupted while waiting for a worker thread");
+                }
+                catch (ExecutionException e)
+                {
+                    throw new ClassFileException(e.getCause());
+                }
+                run.deferred.number(finalNames);
+                runs.add(run);
+                if (run.failure != null)
+                {
+                    failure = run.failure;
+                    break;
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        // Replace the placeholders with the numbered names
+        if (!finalNames.isEmpty())
+        {
+            final Map<String, String> names = finalNames;
+            this.walkTree(new TreeAction()
+            {
+                @Override
+                public void methodAction(Md md)
+                {
+                    String name = names.get(md.getObfName());
+                    if (name != null)
+                    {
+                        md.setOutName(name);
+                    }
+                }
+
+                @Override
+                public void fieldAction(Fd fd)
+                {
+                    String name = names.get(fd.getObfName());
+                    if (name != null)
+                    {
+                        fd.setOutName(name);
+                    }
+                }
+            });
+        }
+
+        for (NameSpaceRun run : runs)
+        {
+            run.deferred.replay();
+        }
+        if (failure instanceof ClassFileException)
+        {
+            throw (ClassFileException)failure;
+        }
+        if (failure instanceof RuntimeException)
+        {
+            throw (RuntimeException)failure;
+        }
+        if (failure instanceof Error)
+        {
+            throw (Error)failure;
+        }
+    }
+
     /**
      * Mark TreeItem and all parents for retention.
      * 
@@ -1418,81 +1648,356 @@ public class ClassTree implements NameMapper, ClassConstants
      */
     private void retainHierarchy(TreeItem ti, boolean invert)
     {
-        if (invert)
+        for (; ti != null; ti = ti.parent)
         {
-            // error to force package level obfuscation
-            if (!(ti instanceof Pk))
+            if (invert)
             {
-                ti.setOutName(null);
-                ti.clearFromScript();
+                // error to force package level obfuscation
+                if (!(ti instanceof Pk))
+                {
+                    ti.setOutName(null);
+                    ti.clearFromScript();
+                }
             }
-        }
-        else
-        {
-            if (!ti.isFixed())
+            else
             {
-                ti.setOutName(ti.getInName());
-                ti.setFromScript();
+                if (!ti.isFixed())
+                {
+                    ti.setOutName(ti.getInName());
+                    ti.setFromScript();
+                }
             }
         }
-        if (ti.parent != null)
+    }
+
+    /**
+     * Return the classes in the database which extend or implement the named class or interface, directly or indirectly.
+     * 
+     * @param name
+     * @throws ClassFileException
+     */
+    private Set<Cl> getSubtypes(String name) throws ClassFileException
+    {
+        if (this.subtypeIndex == null)
         {
-            this.retainHierarchy(ti.parent, invert);
+            final Map<String, Set<Cl>> index = new HashMap<String, Set<Cl>>();
+            this.walkTree(new TreeAction()
+            {
+                @Override
+                public void classAction(Cl cl)
+                {
+                    for (String superName : cl.getSuperTypeNames())
+                    {
+                        Set<Cl> subtypes = index.get(superName);
+                        if (subtypes == null)
+                        {
+                            subtypes = new HashSet<Cl>();
+                            index.put(superName, subtypes);
+                        }
+                        subtypes.add(cl);
+                    }
+                }
+            });
+            this.subtypeIndex = index;
         }
+
+        Set<Cl> subtypes = this.subtypeIndex.get(name);
+        return (subtypes == null) ? Collections.<Cl>emptySet() : subtypes;
     }
 
     /**
-     * Walk the whole tree taking action once only on each package level, class, method and field.
+     * Walk the whole tree taking action once only on each package level, class, method and field. Several actions can share
+     * the walk, each taking action on an item in turn.
      * 
-     * @param ta
+     * @param actions
      * @throws ClassFileException
      */
-    public void walkTree(TreeAction ta) throws ClassFileException
+    public void walkTree(TreeAction... actions) throws ClassFileException
     {
-        this.walkTree(ta, this.root);
+        WalkFrame.walk(new TreeFrame(this.root, actions));
     }
 
     /**
-     * Walk the tree which has TreeItem as its root taking action once only on each package level, class, method and field.
+     * Walk the parts of the tree below a package level which can match any of a set of wildcard queries, skipping the
+     * package levels which are outside the literal package prefix of every query.
      * 
-     * @param ta
-     * @param ti
+     * @param pk
+     * @param depth
+     *            package level of pk below the root, or -1 if prefixes no longer apply
+     * @param queries
      * @throws ClassFileException
      */
-    private void walkTree(TreeAction ta, TreeItem ti) throws ClassFileException
+    private void walkQueries(Pk pk, int depth, List<WildcardQuery> queries) throws ClassFileException
     {
-        if (ti instanceof Pk)
+        WalkFrame.walk(new QueryFrame(pk, depth, queries));
+    }
+
+    /**
+     * Frame for walking the parts of the tree below a package level which can match any of a set of wildcard queries: the
+     * package levels still inside the prefix of some query are walked first, and then each class once for every query.
+     */
+    private static class QueryFrame extends WalkFrame
+    {
+        private Pk pk;
+        private int depth;
+        private List<WildcardQuery> queries;
+        private Iterator<Pk> packages = null;
+        private Iterator<Cl> classes = null;
+        private TreeAction[] actions = null;
+
+        /**
+         * Constructor
+         * 
+         * @param pk
+         * @param depth
+         * @param queries
+         */
+        private QueryFrame(Pk pk, int depth, List<WildcardQuery> queries)
         {
-            Pk pk = (Pk)ti;
-            Collection<Pk> packages = pk.getPackages();
-            ta.packageAction(pk);
-            for (TreeItem tiPk : packages)
+            this.pk = pk;
+            this.depth = depth;
+            this.queries = queries;
+        }
+
+        @Override
+        protected WalkFrame next() throws ClassFileException
+        {
+            if (this.packages == null)
+            {
+                this.packages = this.pk.getPackages().iterator();
+            }
+            while (this.packages.hasNext())
+            {
+                Pk child = this.packages.next();
+                String name = child.getInName();
+                if ((this.depth < 0) || (name.indexOf('*') != -1))
+                {
+                    // Wildcards in the names themselves are matched as patterns, so do not prune below here
+                    return new QueryFrame(child, -1, this.queries);
+                }
+                List<WildcardQuery> active = new ArrayList<WildcardQuery>();
+                for (WildcardQuery query : this.queries)
+                {
+                    String[] prefix = query.name.getPrefix();
+                    if ((this.depth >= prefix.length) || prefix[this.depth].equals(name))
+                    {
+                        active.add(query);
+                    }
+                }
+                if (active.size() > 0)
+                {
+                    return new QueryFrame(child, this.depth + 1, active);
+                }
+            }
+
+            // One walk of each class takes the action of every query still active here
+            if (this.classes == null)
+            {
+                this.classes = this.pk.getClasses().iterator();
+                this.actions = this.queries.toArray(new TreeAction[this.queries.size()]);
+            }
+            if (this.classes.hasNext())
+            {
+                return new TreeFrame(this.classes.next(), this.actions);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Frame for walking the tree below a package level or class: a package level is acted on before the package levels and
+     * classes in it, and a class after its inner classes.
+     */
+    private static class TreeFrame extends WalkFrame
+    {
+        private TreeItem ti;
+        private TreeAction[] actions;
+        private Iterator<Pk> packages = null;
+        private Iterator<Cl> classes = null;
+
+        /**
+         * Constructor
+         * 
+         * @param ti
+         * @param actions
+         */
+        private TreeFrame(TreeItem ti, TreeAction[] actions)
+        {
+            this.ti = ti;
+            this.actions = actions;
+        }
+
+        @Override
+        protected WalkFrame next() throws ClassFileException
+        {
+            if ((this.classes == null) && (this.ti instanceof Pk))
+            {
+                if (this.packages == null)
+                {
+                    Pk pk = (Pk)this.ti;
+                    for (TreeAction ta : this.actions)
+                    {
+                        ta.packageAction(pk);
+                    }
+                    this.packages = pk.getPackages().iterator();
+                }
+                if (this.packages.hasNext())
+                {
+                    return new TreeFrame(this.packages.next(), this.actions);
+                }
+            }
+            if (this.classes == null)
+            {
+                if (!(this.ti instanceof PkCl))
+                {
+                    return null;
+                }
+                this.classes = ((PkCl)this.ti).getClasses().iterator();
+            }
+            if (this.classes.hasNext())
+            {
+                return new TreeFrame(this.classes.next(), this.actions);
+            }
+
+            if (this.ti instanceof Cl)
+            {
+                Cl cl = (Cl)this.ti;
+                for (TreeAction ta : this.actions)
+                {
+                    ta.classAction(cl);
+                }
+                for (Fd fd : cl.getFields())
+                {
+                    for (TreeAction ta : this.actions)
+                    {
+                        ta.fieldAction(fd);
+                    }
+                }
+                for (Md md : cl.getMethods())
+                {
+                    for (TreeAction ta : this.actions)
+                    {
+                        ta.methodAction(md);
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A run of inheritance name spaces, resolved on a worker thread with its unique names and logging deferred.
+     */
+    private static class NameSpaceRun implements Callable<NameSpaceRun>
+    {
+        private List<Cl> nameSpaces;
+        private NameProvider.DeferredNames deferred;
+
+        /**
+         * What stopped the run, if anything
+         */
+        private Throwable failure;
+
+        /**
+         * Constructor
+         * 
+         * @param nameSpaces
+         */
+        private NameSpaceRun(List<Cl> nameSpaces)
+        {
+            this.nameSpaces = nameSpaces;
+        }
+
+        @Override
+        public NameSpaceRun call()
+        {
+            this.deferred = NameProvider.deferNames();
+            try
             {
-                this.walkTree(ta, tiPk);
+                for (Cl cl : this.nameSpaces)
+                {
+                    cl.resolveOptimally();
+                }
+            }
+            catch (Throwable e)
+            {
+                this.failure = e;
             }
+            finally
+            {
+                NameProvider.endDeferNames();
+            }
+            return this;
         }
-        if (ti instanceof PkCl)
+    }
+
+    /**
+     * A compiled wildcard specifier for classes, methods or fields, collecting the matching items as the tree is walked.
+     */
+    private static class WildcardQuery extends TreeAction
+    {
+        private RgsEntryType type;
+        private WildcardMatcher name;
+        private WildcardMatcher descriptor = null;
+        private List<TreeItem> matches = new ArrayList<TreeItem>();
+
+        /**
+         * Constructor
+         * 
+         * @param type
+         * @param fullName
+         * @param descriptor
+         */
+        private WildcardQuery(RgsEntryType type, String fullName, String descriptor)
+        {
+            this.type = type;
+            // Old !a/b/* wildcard syntax, for backward compatibility
+            // (acts as if every * becomes a ** in new-style match)
+            if (fullName.indexOf('!') == 0)
+            {
+                this.name = WildcardMatcher.create(fullName.substring(1));
+                if (type == RgsEntryType.METHOD)
+                {
+                    this.descriptor = WildcardMatcher.create(descriptor);
+                }
+            }
+            // New a/b/** wildcard syntax
+            else
+            {
+                this.name = WildcardMatcher.createGeneral(fullName);
+                if (type != RgsEntryType.CLASS)
+                {
+                    this.descriptor = WildcardMatcher.create(descriptor);
+                }
+            }
+        }
+
+        @Override
+        public void classAction(Cl cl)
         {
-            PkCl pkCl = (PkCl)ti;
-            Collection<Cl> classes = pkCl.getClasses();
-            for (TreeItem tiCl : classes)
+            if ((this.type == RgsEntryType.CLASS) && this.name.matches(cl.getFullInName()))
             {
-                this.walkTree(ta, tiCl);
+                this.matches.add(cl);
             }
         }
-        if (ti instanceof Cl)
+
+        @Override
+        public void methodAction(Md md)
         {
-            Cl cl = (Cl)ti;
-            Collection<Fd> fields = cl.getFields();
-            Collection<Md> methods = cl.getMethods();
-            ta.classAction(cl);
-            for (Fd fd : fields)
+            if ((this.type == RgsEntryType.METHOD) && this.name.matches(md.getFullInName())
+                && this.descriptor.matches(md.getDescriptor()))
             {
-                ta.fieldAction(fd);
+                this.matches.add(md);
             }
-            for (Md md : methods)
+        }
+
+        @Override
+        public void fieldAction(Fd fd)
+        {
+            if ((this.type == RgsEntryType.FIELD) && this.name.matches(fd.getFullInName())
+                && ((this.descriptor == null) || this.descriptor.matches(fd.getDescriptor())))
             {
-                ta.methodAction(md);
+                this.matches.add(fd);
             }
         }
     }
@@ -21,6 +21,7 @@ package com.rl.obf;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.zip.*;
 
 import com.rl.NameProvider;
@@ -55,6 +56,8 @@ public class GuardDB implements ClassConstants
         "# WARNING - class file format has incompatible major-version number: v";
     private static final String WARNING_INCOMPATIBLE_VERSION_2 =
         "# WARNING - this version of RetroGuard supports up to class format:  v";
+    private static final int PENDING_ENTRIES_PER_THREAD = 8;
+    private static final long PARALLEL_ENTRY_SIZE = 1024 * 1024;
 
 
     // Fields ----------------------------------------------------------------
@@ -63,6 +66,11 @@ public class GuardDB implements ClassConstants
      */
     private ZipFile inJar;
 
+    /**
+     * The same JAR file, for copying entries through still compressed (null if its central directory cannot be read raw)
+     */
+    private RawZipFile rawJar;
+
     /**
      * MANIFEST.MF RFC822-style data from old Jar
      */
@@ -98,8 +106,259 @@ public class GuardDB implements ClassConstants
      */
     private boolean enableDigestMD5 = false;
 
+    /**
+     * Raw class file data read while building the class tree, reused by the remap pass
+     */
+    private ClassDataCache classData = null;
+
+    /**
+     * Classes and interfaces outside the input Jar, from the configured classpath and the running JVM
+     */
+    private LibraryIndex libraryIndex;
+
+    /**
+     * Buffers for copying entries to the output Jar
+     */
+    private BufferPool buffers = new BufferPool(BufferPool.DEFAULT_BUFFER_SIZE);
+
 
     // Class Methods ---------------------------------------------------------
+    /**
+     * Create the pool of worker threads for reading and remapping classes, or return null if they should be processed on the
+     * calling thread.
+     */
+    private static ExecutorService createExecutor()
+    {
+        return (NameProvider.threads > 1 ? Executors.newFixedThreadPool(NameProvider.threads) : null);
+    }
+
+    /**
+     * Run a task on the pool of worker threads, or immediately if there is no pool.
+     * 
+     * @param executor
+     * @param task
+     */
+    private static void execute(ExecutorService executor, FutureTask<?> task)
+    {
+        if (executor != null)
+        {
+            executor.execute(task);
+        }
+        else
+        {
+            task.run();
+        }
+    }
+
+    /**
+     * Wait for a task to complete and return its result, rethrowing any exception it threw.
+     * 
+     * @param task
+     * @throws IOException
+     * @throws ClassFileException
+     */
+    private static <T> T getResult(FutureTask<T> task) throws IOException, ClassFileException
+    {
+        try
+        {
+            return task.get();
+        }
+        catch (InterruptedException e)
+        {
+            throw new InterruptedIOException("Interrupted while waiting for a worker thread");
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException)cause;
+            }
+            if (cause instanceof ClassFileException)
+            {
+                throw (ClassFileException)cause;
+            }
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error)cause;
+            }
+            throw new ClassFileException(cause);
+        }
+    }
+
+    /**
+     * Return the entries that are always applied before the script.
+     */
+    private static List<RgsEntry> getDefaultEntries()
+    {
+        List<RgsEntry> entries = new ArrayList<RgsEntry>();
+// Always retain native methods and their classes, using script entry:
+// .method;native ** * and_class
+        entries.add(GuardDB.newMethodEntry("**", "*", true, null, ClassConstants.ACC_NATIVE, ClassConstants.ACC_NATIVE));
+// Always retain the auto-generated values() and valueOf(...) methods in Enums, using script entries:
+// .method;public;static;final **/values * extends java/lang/Enum
+// .method;public;static **/valueOf * extends java/lang/Enum
+        entries.add(GuardDB.newMethodEntry("**/values", "*", false, "java/lang/Enum",
+            ClassConstants.ACC_PUBLIC | ClassConstants.ACC_STATIC | ClassConstants.ACC_FINAL,
+            ClassConstants.ACC_PUBLIC | ClassConstants.ACC_STATIC | ClassConstants.ACC_FINAL));
+        entries.add(GuardDB.newMethodEntry("**/valueOf", "*", false, "java/lang/Enum",
+            ClassConstants.ACC_PUBLIC | ClassConstants.ACC_STATIC, ClassConstants.ACC_PUBLIC | ClassConstants.ACC_STATIC));
+        return entries;
+    }
+
+    /**
+     * Return the attribute, class, method and field entries that an option stands for, in the order they are applied.
+     * 
+     * @param option
+     */
+    private static List<RgsEntry> getOptionEntries(String option)
+    {
+        List<RgsEntry> entries = new ArrayList<RgsEntry>();
+        if (ClassConstants.OPTION_Generic.equals(option))
+        {
+            entries.add(new RgsEntry(RgsEntryType.ATTR, ClassConstants.ATTR_Signature));
+        }
+        else if (ClassConstants.OPTION_LineNumberDebug.equals(option))
+        {
+            entries.add(new RgsEntry(RgsEntryType.ATTR, ClassConstants.ATTR_LineNumberTable));
+            entries.add(new RgsEntry(RgsEntryType.ATTR, ClassConstants.ATTR_SourceFile));
+        }
+        else if (ClassConstants.OPTION_RuntimeAnnotations.equals(option))
+        {
+            entries.add(new RgsEntry(RgsEntryType.ATTR, ClassConstants.ATTR_RuntimeVisibleAnnotations));
+            entries.add(new RgsEntry(RgsEntryType.ATTR, ClassConstants.ATTR_RuntimeVisibleParameterAnnotations));
+            entries.add(new RgsEntry(RgsEntryType.ATTR, ClassConstants.ATTR_AnnotationDefault));
+        }
+        else if (ClassConstants.OPTION_Annotations.equals(option))
+        {
+            entries.add(new RgsEntry(RgsEntryType.ATTR, ClassConstants.ATTR_RuntimeVisibleAnnotations));
+            entries.add(new RgsEntry(RgsEntryType.ATTR, ClassConstants.ATTR_RuntimeInvisibleAnnotations));
+            entries.add(new RgsEntry(RgsEntryType.ATTR, ClassConstants.ATTR_RuntimeVisibleParameterAnnotations));
+            entries.add(new RgsEntry(RgsEntryType.ATTR, ClassConstants.ATTR_RuntimeInvisibleParameterAnnotations));
+            entries.add(new RgsEntry(RgsEntryType.ATTR, ClassConstants.ATTR_AnnotationDefault));
+        }
+        else if (ClassConstants.OPTION_Enumeration.equals(option))
+        {
+// .option Enumeration - translates into
+// .class ** public extends java/lang/Enum
+            entries.add(GuardDB.newClassEntry("**", true, false, "java/lang/Enum"));
+        }
+        else if (ClassConstants.OPTION_Application.equals(option))
+        {
+// .option Application - translates into
+// .method **/main ([Ljava/lang/String;)V and_class
+            entries.add(GuardDB.newMethodEntry("**/main", "([Ljava/lang/String;)V", true, null, 0, 0));
+        }
+        else if (ClassConstants.OPTION_Applet.equals(option))
+        {
+// .option Applet - translates into
+// .class ** extends java/applet/Applet
+            entries.add(GuardDB.newClassEntry("**", false, false, "java/applet/Applet"));
+        }
+        else if (ClassConstants.OPTION_RMI.equals(option))
+        {
+// .option RMI - translates into
+// .option Serializable (see below for details)
+// .class ** protected extends java/rmi/Remote
+// .class **_Stub
+// .class **_Skel
+            entries.add(GuardDB.newClassEntry("**", false, true, "java/rmi/Remote"));
+            entries.add(GuardDB.newClassEntry("**_Stub", false, false, null));
+            entries.add(GuardDB.newClassEntry("**_Skel", false, false, null));
+        }
+        if (ClassConstants.OPTION_Serializable.equals(option) || ClassConstants.OPTION_RMI.equals(option))
+        {
+// .option Serializable - translates into
+// .method;private **/writeObject (Ljava/io/ObjectOutputStream;)V extends java/io/Serializable
+// .method;private **/readObject (Ljava/io/ObjectInputStream;)V extends java/io/Serializable
+// .method **/writeReplace ()Ljava/lang/Object; extends java/io/Serializable
+// .method **/readResolve ()Ljava/lang/Object; extends java/io/Serializable
+// .field;static;final **/serialVersionUID J extends java/io/Serializable
+// .field;static;final **/serialPersistentFields [Ljava/io/ObjectStreamField; extends java/io/Serializable
+// .class ** extends java/io/Serializable
+// .field;!transient;!static ** * extends java/io/Serializable
+            entries.add(GuardDB.newMethodEntry("**/writeObject", "(Ljava/io/ObjectOutputStream;)V", false,
+                "java/io/Serializable", ClassConstants.ACC_PRIVATE, ClassConstants.ACC_PRIVATE));
+            entries.add(GuardDB.newMethodEntry("**/readObject", "(Ljava/io/ObjectInputStream;)V", false,
+                "java/io/Serializable", ClassConstants.ACC_PRIVATE, ClassConstants.ACC_PRIVATE));
+            entries.add(GuardDB.newMethodEntry("**/writeReplace", "()Ljava/lang/Object;", false, "java/io/Serializable",
+                0, 0));
+            entries.add(GuardDB.newMethodEntry("**/readResolve", "()Ljava/lang/Object;", false, "java/io/Serializable",
+                0, 0));
+            entries.add(GuardDB.newFieldEntry("**/serialVersionUID", "J", "java/io/Serializable",
+                ClassConstants.ACC_STATIC | ClassConstants.ACC_FINAL,
+                ClassConstants.ACC_STATIC | ClassConstants.ACC_FINAL));
+            entries.add(GuardDB.newFieldEntry("**/serialPersistentFields", "[Ljava/io/ObjectStreamField;",
+                "java/io/Serializable",
+                ClassConstants.ACC_PRIVATE | ClassConstants.ACC_STATIC | ClassConstants.ACC_FINAL,
+                ClassConstants.ACC_PRIVATE | ClassConstants.ACC_STATIC | ClassConstants.ACC_FINAL));
+            entries.add(GuardDB.newClassEntry("**", false, false, "java/io/Serializable"));
+            entries.add(GuardDB.newFieldEntry("**", "*", "java/io/Serializable",
+                ClassConstants.ACC_TRANSIENT | ClassConstants.ACC_STATIC, 0));
+        }
+        return entries;
+    }
+
+    /**
+     * Create a class entry.
+     * 
+     * @param name
+     * @param retainToPublic
+     * @param retainToProtected
+     * @param extendsName
+     */
+    private static RgsEntry newClassEntry(String name, boolean retainToPublic, boolean retainToProtected, String extendsName)
+    {
+        RgsEntry entry = new RgsEntry(RgsEntryType.CLASS, name);
+        entry.retainToPublic = retainToPublic;
+        entry.retainToProtected = retainToProtected;
+        entry.extendsName = extendsName;
+        return entry;
+    }
+
+    /**
+     * Create a method entry.
+     * 
+     * @param name
+     * @param descriptor
+     * @param retainAndClass
+     * @param extendsName
+     * @param accessMask
+     * @param accessSetting
+     */
+    private static RgsEntry newMethodEntry(String name, String descriptor, boolean retainAndClass, String extendsName,
+        int accessMask, int accessSetting)
+    {
+        RgsEntry entry = new RgsEntry(RgsEntryType.METHOD, name, descriptor);
+        entry.retainAndClass = retainAndClass;
+        entry.extendsName = extendsName;
+        entry.accessMask = accessMask;
+        entry.accessSetting = accessSetting;
+        return entry;
+    }
+
+    /**
+     * Create a field entry.
+     * 
+     * @param name
+     * @param descriptor
+     * @param extendsName
+     * @param accessMask
+     * @param accessSetting
+     */
+    private static RgsEntry newFieldEntry(String name, String descriptor, String extendsName, int accessMask,
+        int accessSetting)
+    {
+        RgsEntry entry = new RgsEntry(RgsEntryType.FIELD, name, descriptor);
+        entry.extendsName = extendsName;
+        entry.accessMask = accessMask;
+        entry.accessSetting = accessSetting;
+        return entry;
+    }
 
 
     // Instance Methods ------------------------------------------------------
@@ -112,7 +371,16 @@ public class GuardDB implements ClassConstants
     public GuardDB(File inFile) throws IOException
     {
         this.inJar = new ZipFile(inFile);
+        try
+        {
+            this.rawJar = new RawZipFile(inFile);
+        }
+        catch (IOException e)
+        {
+            this.rawJar = null;
+        }
         this.parseManifest();
+        this.libraryIndex = new LibraryIndex(NameProvider.classpath, NameProvider.libraryCacheDir);
     }
 
     /**
@@ -133,47 +401,54 @@ public class GuardDB implements ClassConstants
      */
     public void buildClassTree(PrintWriter log) throws IOException, ClassFileException
     {
-        // Go through the input Jar, adding each class file to the database
+        // Go through the input Jar, adding each class file to the database. Class files may be read and parsed by a pool of
+        // worker threads, but are always added in input order, so the tree is the same as one built sequentially.
         int incompatibleVersion = 0;
-        this.classTree = new ClassTree();
+        this.classTree = new ClassTree(this.libraryIndex);
+        if (this.classData != null)
+        {
+            this.classData.close();
+        }
+        // The class data is only kept for the remap pass, and only the class headers are needed without one
+        this.classData = (NameProvider.mapOnly ? null : new ClassDataCache(NameProvider.classCacheSize));
+        ExecutorService executor = GuardDB.createExecutor();
+        int window = Math.max(1, NameProvider.threads) * GuardDB.PENDING_ENTRIES_PER_THREAD;
+        LinkedList<FutureTask<ClassParser>> pending = new LinkedList<FutureTask<ClassParser>>();
         Enumeration<? extends ZipEntry> entries = this.inJar.entries();
-        while (entries.hasMoreElements())
+        try
         {
-            // Get the next entry from the input Jar
-            ZipEntry inEntry = entries.nextElement();
-            String name = inEntry.getName();
-            if ((name.length() > GuardDB.CLASS_EXT.length())
-                && name.substring(name.length() - GuardDB.CLASS_EXT.length(), name.length()).equals(GuardDB.CLASS_EXT))
+            while (entries.hasMoreElements())
             {
-                // Create a full internal representation of the class file
-                DataInputStream inStream = new DataInputStream(new BufferedInputStream(this.inJar.getInputStream(inEntry)));
-                ClassFile cf = null;
-                try
-                {
-                    cf = ClassFile.create(inStream);
-                }
-                catch (ClassFileException e)
+                // Get the next entry from the input Jar
+                ZipEntry inEntry = entries.nextElement();
+                String name = inEntry.getName();
+                if ((name.length() > GuardDB.CLASS_EXT.length())
+                    && name.substring(name.length() - GuardDB.CLASS_EXT.length(), name.length()).equals(GuardDB.CLASS_EXT))
                 {
-                    log.println(GuardDB.ERROR_CORRUPT_CLASS + name
-                        + " (" + (e.getMessage() != null ? e.getMessage() : "") + ")");
-                    System.err.println(GuardDB.ERROR_CORRUPT_CLASS + name
-                        + " (" + (e.getMessage() != null ? e.getMessage() : "") + ")");
-                }
-                finally
-                {
-                    inStream.close();
+                    FutureTask<ClassParser> task = new FutureTask<ClassParser>(new ClassParser(inEntry));
+                    GuardDB.execute(executor, task);
+                    pending.add(task);
                 }
 
-                if (cf != null)
+                // Add parsed classes to the tree, so that only a limited number are held in memory
+                while (pending.size() > window)
                 {
-                    if (cf.hasIncompatibleVersion())
-                    {
-                        incompatibleVersion = cf.getMajorVersion();
-                    }
-                    this.classTree.addClassFile(cf);
+                    incompatibleVersion = this.addClassFile(pending.removeFirst(), log, incompatibleVersion);
                 }
             }
+            while (!pending.isEmpty())
+            {
+                incompatibleVersion = this.addClassFile(pending.removeFirst(), log, incompatibleVersion);
+            }
         }
+        finally
+        {
+            if (executor != null)
+            {
+                executor.shutdownNow();
+            }
+        }
+
         // Warn if classes are incompatible version of class file format
         if (incompatibleVersion != 0)
         {
@@ -182,6 +457,45 @@ public class GuardDB implements ClassConstants
         }
     }
 
+    /**
+     * Add a class file parsed from the input Jar to the database, keeping its raw data for the remap pass. Return the
+     * incompatible class file version seen so far.
+     * 
+     * @param task
+     * @param log
+     * @param incompatibleVersion
+     * @throws IOException
+     * @throws ClassFileException
+     */
+    private int addClassFile(FutureTask<ClassParser> task, PrintWriter log, int incompatibleVersion)
+        throws IOException, ClassFileException
+    {
+        ClassParser parser = GuardDB.getResult(task);
+        if (this.classData != null)
+        {
+            this.classData.put(parser.name, parser.bytes);
+        }
+        if (parser.error != null)
+        {
+            ClassFileException e = parser.error;
+            log.println(GuardDB.ERROR_CORRUPT_CLASS + parser.name
+                + " (" + (e.getMessage() != null ? e.getMessage() : "") + ")");
+            System.err.println(GuardDB.ERROR_CORRUPT_CLASS + parser.name
+                + " (" + (e.getMessage() != null ? e.getMessage() : "") + ")");
+        }
+
+        ClassHeader cf = parser.cf;
+        if (cf != null)
+        {
+            if (cf.hasIncompatibleVersion())
+            {
+                incompatibleVersion = cf.getMajorVersion();
+            }
+            this.classTree.addClassFile(cf);
+        }
+        return incompatibleVersion;
+    }
+
     /**
      * Go through database marking certain entities for retention, while maintaining polymorphic integrity.
      * 
@@ -201,32 +515,52 @@ public class GuardDB implements ClassConstants
             this.buildClassTree(log);
         }
 
+        // Read the whole script, and match all wildcarded entries, including those the options stand for, in one walk of
+        // the tree. The entries are then applied in script order.
+        List<RgsEntry> entries = new ArrayList<RgsEntry>();
+        RGSException parseError = null;
         try
         {
+            while (rgsIter.hasNext())
+            {
+                entries.add(rgsIter.next());
+            }
+        }
+        catch (RGSException e)
+        {
+            // apply the entries before the error, as they would have been when read one at a time
+            parseError = e;
+        }
+        List<RgsEntry> defaultEntries = GuardDB.getDefaultEntries();
+        List<RgsEntry> queries = new ArrayList<RgsEntry>(defaultEntries);
+        for (RgsEntry entry : entries)
+        {
+            if (entry.type == RgsEntryType.OPTION)
+            {
+                queries.addAll(GuardDB.getOptionEntries(entry.name));
+            }
+            else
+            {
+                queries.add(entry);
+            }
+        }
+        this.classTree.matchWildcards(queries);
 
-// Always retain native methods and their classes, using script entry:
-// .method;native ** * and_class
-            this.classTree.retainMethod("**", "*", true, null, false, ClassConstants.ACC_NATIVE, ClassConstants.ACC_NATIVE);
-
-// Always retain the auto-generated values() and valueOf(...) methods in Enums, using script entries:
-// .method;public;static;final **/values * extends java/lang/Enum
-// .method;public;static **/valueOf * extends java/lang/Enum
-            this.classTree.retainMethod("**/values", "*", false, "java/lang/Enum", false,
-                ClassConstants.ACC_PUBLIC | ClassConstants.ACC_STATIC | ClassConstants.ACC_FINAL,
-                ClassConstants.ACC_PUBLIC | ClassConstants.ACC_STATIC | ClassConstants.ACC_FINAL);
-            this.classTree.retainMethod("**/valueOf", "*", false, "java/lang/Enum", false,
-                ClassConstants.ACC_PUBLIC | ClassConstants.ACC_STATIC,
-                ClassConstants.ACC_PUBLIC | ClassConstants.ACC_STATIC);
+        try
+        {
+            for (RgsEntry entry : defaultEntries)
+            {
+                this.retainEntry(entry);
+            }
         }
         catch (ClassFileException e)
         {
             // shouldn't get here
         }
 
-        // Iterate the entries in the RGS script
-        while (rgsIter.hasNext())
+        // Apply the entries in the RGS script
+        for (RgsEntry entry : entries)
         {
-            RgsEntry entry = rgsIter.next();
             try
             {
                 switch (entry.type)
@@ -244,120 +578,24 @@ public class GuardDB implements ClassConstants
                         {
                             this.enableMapClassString = true;
                         }
-                        else if (ClassConstants.OPTION_Repackage.equals(entry.name))
-                        {
-                            // ignored
-                        }
-                        else if (ClassConstants.OPTION_Generic.equals(entry.name))
-                        {
-                            this.classTree.retainAttribute(ClassConstants.ATTR_Signature);
-                        }
-                        else if (ClassConstants.OPTION_LineNumberDebug.equals(entry.name))
-                        {
-                            this.classTree.retainAttribute(ClassConstants.ATTR_LineNumberTable);
-                            this.classTree.retainAttribute(ClassConstants.ATTR_SourceFile);
-                        }
-                        else if (ClassConstants.OPTION_RuntimeAnnotations.equals(entry.name))
-                        {
-                            this.classTree.retainAttribute(ClassConstants.ATTR_RuntimeVisibleAnnotations);
-                            this.classTree.retainAttribute(ClassConstants.ATTR_RuntimeVisibleParameterAnnotations);
-                            this.classTree.retainAttribute(ClassConstants.ATTR_AnnotationDefault);
-                        }
-                        else if (ClassConstants.OPTION_Annotations.equals(entry.name))
+                        for (RgsEntry optionEntry : GuardDB.getOptionEntries(entry.name))
                         {
-                            this.classTree.retainAttribute(ClassConstants.ATTR_RuntimeVisibleAnnotations);
-                            this.classTree.retainAttribute(ClassConstants.ATTR_RuntimeInvisibleAnnotations);
-                            this.classTree.retainAttribute(ClassConstants.ATTR_RuntimeVisibleParameterAnnotations);
-                            this.classTree.retainAttribute(ClassConstants.ATTR_RuntimeInvisibleParameterAnnotations);
-                            this.classTree.retainAttribute(ClassConstants.ATTR_AnnotationDefault);
-                        }
-                        else if (ClassConstants.OPTION_Enumeration.equals(entry.name))
-                        {
-// .option Enumeration - translates into
-// .class ** public extends java/lang/Enum
-                            this.classTree.retainClass("**", true, false, false, false, false, "java/lang/Enum", false, 0, 0);
-                        }
-                        else if (ClassConstants.OPTION_Application.equals(entry.name))
-                        {
-// .option Application - translates into
-// .method **/main ([Ljava/lang/String;)V and_class
-                            this.classTree.retainMethod("**/main", "([Ljava/lang/String;)V", true, null, false, 0, 0);
-                        }
-                        else if (ClassConstants.OPTION_Applet.equals(entry.name))
-                        {
-// .option Applet - translates into
-// .class ** extends java/applet/Applet
-                            this.classTree.retainClass("**", false, false, false, false, false, "java/applet/Applet", false, 0, 0);
-                        }
-                        else if (ClassConstants.OPTION_RMI.equals(entry.name))
-                        {
-// .option RMI - translates into
-// .option Serializable (see below for details)
-// .class ** protected extends java/rmi/Remote
-// .class **_Stub
-// .class **_Skel
-                            this.classTree.retainClass("**", false, true, false, false, false, "java/rmi/Remote", false, 0, 0);
-                            this.classTree.retainClass("**_Stub", false, false, false, false, false, null, false, 0, 0);
-                            this.classTree.retainClass("**_Skel", false, false, false, false, false, null, false, 0, 0);
-                        }
-                        if (ClassConstants.OPTION_Serializable.equals(entry.name) || ClassConstants.OPTION_RMI.equals(entry.name))
-                        {
-// .option Serializable - translates into
-// .method;private **/writeObject (Ljava/io/ObjectOutputStream;)V extends java/io/Serializable
-// .method;private **/readObject (Ljava/io/ObjectInputStream;)V extends java/io/Serializable
-// .method **/writeReplace ()Ljava/lang/Object; extends java/io/Serializable
-// .method **/readResolve ()Ljava/lang/Object; extends java/io/Serializable
-// .field;static;final **/serialVersionUID J extends java/io/Serializable
-// .field;static;final **/serialPersistentFields [Ljava/io/ObjectStreamField; extends java/io/Serializable
-// .class ** extends java/io/Serializable
-// .field;!transient;!static ** * extends java/io/Serializable
-                            this.classTree.retainMethod("**/writeObject", "(Ljava/io/ObjectOutputStream;)V", false,
-                                "java/io/Serializable", false, ClassConstants.ACC_PRIVATE, ClassConstants.ACC_PRIVATE);
-                            this.classTree.retainMethod("**/readObject", "(Ljava/io/ObjectInputStream;)V", false,
-                                "java/io/Serializable", false, ClassConstants.ACC_PRIVATE, ClassConstants.ACC_PRIVATE);
-                            this.classTree.retainMethod("**/writeReplace", "()Ljava/lang/Object;", false, "java/io/Serializable",
-                                false, 0, 0);
-                            this.classTree.retainMethod("**/readResolve", "()Ljava/lang/Object;", false, "java/io/Serializable",
-                                false, 0, 0);
-                            this.classTree.retainField("**/serialVersionUID", "J", false, "java/io/Serializable", false,
-                                ClassConstants.ACC_STATIC | ClassConstants.ACC_FINAL,
-                                ClassConstants.ACC_STATIC | ClassConstants.ACC_FINAL);
-                            this.classTree.retainField("**/serialPersistentFields", "[Ljava/io/ObjectStreamField;", false,
-                                "java/io/Serializable", false,
-                                ClassConstants.ACC_PRIVATE | ClassConstants.ACC_STATIC | ClassConstants.ACC_FINAL,
-                                ClassConstants.ACC_PRIVATE | ClassConstants.ACC_STATIC | ClassConstants.ACC_FINAL);
-                            this.classTree.retainClass("**", false, false, false, false, false, "java/io/Serializable",
-                                false, 0, 0);
-                            this.classTree.retainField("**", "*", false, "java/io/Serializable", false,
-                                ClassConstants.ACC_TRANSIENT | ClassConstants.ACC_STATIC, 0);
+                            this.retainEntry(optionEntry);
                         }
                         break;
 
                     case ATTR:
-                        this.classTree.retainAttribute(entry.name);
-                        break;
-
-                    case NOWARN:
-                        this.classTree.noWarnClass(entry.name);
-                        break;
-
                     case CLASS:
                     case NOT_CLASS:
-                        this.classTree.retainClass(entry.name, entry.retainToPublic, entry.retainToProtected,
-                            entry.retainPubProtOnly, entry.retainFieldsOnly, entry.retainMethodsOnly, entry.extendsName,
-                            entry.type == RgsEntryType.NOT_CLASS, entry.accessMask, entry.accessSetting);
-                        break;
-
                     case METHOD:
                     case NOT_METHOD:
-                        this.classTree.retainMethod(entry.name, entry.descriptor, entry.retainAndClass, entry.extendsName,
-                            entry.type == RgsEntryType.NOT_METHOD, entry.accessMask, entry.accessSetting);
-                        break;
-
                     case FIELD:
                     case NOT_FIELD:
-                        this.classTree.retainField(entry.name, entry.descriptor, entry.retainAndClass, entry.extendsName,
-                            entry.type == RgsEntryType.NOT_FIELD, entry.accessMask, entry.accessSetting);
+                        this.retainEntry(entry);
+                        break;
+
+                    case NOWARN:
+                        this.classTree.noWarnClass(entry.name);
                         break;
 
                     case PACKAGE_MAP:
@@ -399,10 +637,53 @@ public class GuardDB implements ClassConstants
                     + " (" + (e.getMessage() != null ? e.getMessage() : "") + ")");
             }
         }
+        this.classTree.clearWildcardMatches();
+        if (parseError != null)
+        {
+            throw parseError;
+        }
 
         NameProvider.retainFromSRG(this.classTree);
     }
 
+    /**
+     * Apply an attribute, class, method or field script entry.
+     * 
+     * @param entry
+     * @throws ClassFileException
+     */
+    private void retainEntry(RgsEntry entry) throws ClassFileException
+    {
+        switch (entry.type)
+        {
+            case ATTR:
+                this.classTree.retainAttribute(entry.name);
+                break;
+
+            case CLASS:
+            case NOT_CLASS:
+                this.classTree.retainClass(entry.name, entry.retainToPublic, entry.retainToProtected, entry.retainPubProtOnly,
+                    entry.retainFieldsOnly, entry.retainMethodsOnly, entry.extendsName, entry.type == RgsEntryType.NOT_CLASS,
+                    entry.accessMask, entry.accessSetting);
+                break;
+
+            case METHOD:
+            case NOT_METHOD:
+                this.classTree.retainMethod(entry.name, entry.descriptor, entry.retainAndClass, entry.extendsName,
+                    entry.type == RgsEntryType.NOT_METHOD, entry.accessMask, entry.accessSetting);
+                break;
+
+            case FIELD:
+            case NOT_FIELD:
+                this.classTree.retainField(entry.name, entry.descriptor, entry.retainAndClass, entry.extendsName,
+                    entry.type == RgsEntryType.NOT_FIELD, entry.accessMask, entry.accessSetting);
+                break;
+
+            default:
+                break;
+        }
+    }
+
     /**
      * Write any non-suppressed warnings to the log.
      * 
@@ -450,14 +731,14 @@ public class GuardDB implements ClassConstants
     }
 
     /**
-     * Remap each class based on the remap database, and remove attributes.
+     * Write the name mapping table to the log file, and the output mappings through the NameProvider, without writing an
+     * output Jar.
      * 
-     * @param out
      * @param log
      * @throws IOException
      * @throws ClassFileException
      */
-    public void remapTo(File out, PrintWriter log) throws IOException, ClassFileException
+    public void writeMap(PrintWriter log) throws IOException, ClassFileException
     {
         // Generate map table if not already done
         if (!this.hasMap)
@@ -467,15 +748,32 @@ public class GuardDB implements ClassConstants
 
         // Write the name frequency and name mapping table to the log file
         this.classTree.dump(log);
+    }
+
+    /**
+     * Remap each class based on the remap database, and remove attributes.
+     * 
+     * @param out
+     * @param log
+     * @throws IOException
+     * @throws ClassFileException
+     */
+    public void remapTo(File out, PrintWriter log) throws IOException, ClassFileException
+    {
+        this.writeMap(log);
 
         // Go through the input Jar, removing attributes and remapping the Constant Pool for each class file. Other files are
         // copied through unchanged, except for manifest and any signature files - these are deleted and the manifest is
-        // regenerated.
+        // regenerated. Classes may be remapped, and entries compressed, by a pool of worker threads, but entries are always
+        // written in input order.
+        ExecutorService executor = GuardDB.createExecutor();
+        int window = Math.max(1, NameProvider.threads) * GuardDB.PENDING_ENTRIES_PER_THREAD;
+        LinkedList<PendingEntry> pending = new LinkedList<PendingEntry>();
         Enumeration<? extends ZipEntry> entries = this.inJar.entries();
-        ZipOutputStream outJar = null;
+        ZipWriter outJar = null;
         try
         {
-            outJar = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(out)));
+            outJar = new ZipWriter(new BufferedOutputStream(new FileOutputStream(out)), this.buffers, NameProvider.compression);
             // No comment in Pro, to reduce output jar size
             if (Version.isLite)
             {
@@ -492,167 +790,75 @@ public class GuardDB implements ClassConstants
                     continue;
                 }
 
-                // Open the entry and prepare to process it
-                DataInputStream inStream = null;
-                try
+                String inName = inEntry.getName();
+                if ((inName.length() > GuardDB.CLASS_EXT.length()) && inName.substring(
+                    inName.length() - GuardDB.CLASS_EXT.length(), inName.length()).equals(GuardDB.CLASS_EXT))
                 {
-                    inStream = new DataInputStream(new BufferedInputStream(this.inJar.getInputStream(inEntry)));
-                    String inName = inEntry.getName();
-                    if ((inName.length() > GuardDB.CLASS_EXT.length()) && inName.substring(
-                        inName.length() - GuardDB.CLASS_EXT.length(), inName.length()).equals(GuardDB.CLASS_EXT))
+                    // Remap the class, using the data kept from building the class tree if available
+                    byte[] bytes = (this.classData != null ? this.classData.get(inName) : null);
+                    if (bytes != null)
                     {
-                        // Write obfuscated class to the output Jar
-                        ClassFile cf = null;
-                        try
-                        {
-                            cf = ClassFile.create(inStream);
-                        }
-                        catch (ClassFileException e)
-                        {
-                            // don't copy corrupt classes
-                        }
-                        if (cf != null)
-                        {
-                            // To reduce output jar size in Pro, no class ID string
-                            if (Version.isLite)
-                            {
-                                cf.setIdString(Version.getClassIdString());
-                            }
-                            Cl cl = this.classTree.getCl(cf.getName());
-                            // Trim entire class if requested
-                            if (cl != null)
-                            {
-                                cf.trimAttrs(this.classTree);
-                                cf.updateRefCount();
-                                cf.remap(this.classTree, log, this.enableMapClassString);
-                                ZipEntry outEntry = new ZipEntry(cf.getName() + GuardDB.CLASS_EXT);
-                                outJar.putNextEntry(outEntry);
-
-                                // Create an OutputStream piped through a number of digest generators for the manifest
-                                List<MessageDigest> digests = new ArrayList<MessageDigest>();
-                                MessageDigest shaDigest = null;
-                                MessageDigest md5Digest = null;
-                                OutputStream outputStream = outJar;
-                                if (this.enableDigestSHA)
-                                {
-                                    try
-                                    {
-                                        shaDigest = MessageDigest.getInstance("SHA-1");
-                                        digests.add(shaDigest);
-                                        outputStream = new DigestOutputStream(outputStream, shaDigest);
-                                    }
-                                    catch (NoSuchAlgorithmException e)
-                                    {
-                                        this.enableDigestSHA = false;
-                                    }
-                                }
-                                if (this.enableDigestMD5)
-                                {
-                                    try
-                                    {
-                                        md5Digest = MessageDigest.getInstance("MD5");
-                                        digests.add(md5Digest);
-                                        outputStream = new DigestOutputStream(outputStream, md5Digest);
-                                    }
-                                    catch (NoSuchAlgorithmException e)
-                                    {
-                                        this.enableDigestMD5 = false;
-                                    }
-                                }
-                                DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
-
-                                // Dump the classfile, while creating the digests
-                                cf.write(dataOutputStream);
-                                dataOutputStream.flush();
-                                outJar.closeEntry();
-
-                                // Now update the manifest entry for the class with new name and new digests
-                                this.updateManifest(inName, cf.getName() + GuardDB.CLASS_EXT, digests);
-                            }
-                        }
-                    }
-                    else if (GuardDB.STREAM_NAME_MANIFEST.equals(inName.toUpperCase())
-                        || ((inName.length() > (GuardDB.SIGNATURE_PREFIX.length() + 1 + GuardDB.SIGNATURE_EXT.length()))
-                            && (inName.indexOf(GuardDB.SIGNATURE_PREFIX) != -1) && inName.substring(
-                            inName.length() - GuardDB.SIGNATURE_EXT.length(), inName.length()).equals(GuardDB.SIGNATURE_EXT)))
-                    {
-                        // Don't pass through the manifest or signature files
-                        continue;
+                        this.classData.remove(inName);
                     }
                     else
                     {
-                        // Copy the non-class entry through unchanged
-                        long size = inEntry.getSize();
-                        if (size != -1)
-                        {
-                            byte[] bytes = new byte[(int)size];
-                            inStream.readFully(bytes);
-                            String outName = this.classTree.getOutName(inName);
-                            ZipEntry outEntry = new ZipEntry(outName);
-                            outJar.putNextEntry(outEntry);
-
-                            // Create an OutputStream piped through a number of digest generators for the manifest
-                            List<MessageDigest> digests = new ArrayList<MessageDigest>();
-                            MessageDigest shaDigest = null;
-                            MessageDigest md5Digest = null;
-                            OutputStream outputStream = outJar;
-                            if (this.enableDigestSHA)
-                            {
-                                try
-                                {
-                                    shaDigest = MessageDigest.getInstance("SHA-1");
-                                    digests.add(shaDigest);
-                                    outputStream = new DigestOutputStream(outputStream, shaDigest);
-                                }
-                                catch (NoSuchAlgorithmException e)
-                                {
-                                    this.enableDigestSHA = false;
-                                }
-                            }
-                            if (this.enableDigestMD5)
-                            {
-                                try
-                                {
-                                    md5Digest = MessageDigest.getInstance("MD5");
-                                    digests.add(md5Digest);
-                                    outputStream = new DigestOutputStream(outputStream, md5Digest);
-                                }
-                                catch (NoSuchAlgorithmException e)
-                                {
-                                    this.enableDigestMD5 = false;
-                                }
-                            }
-                            DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
-
-                            // Dump the data, while creating the digests
-                            dataOutputStream.write(bytes, 0, bytes.length);
-                            dataOutputStream.flush();
-                            outJar.closeEntry();
-
-                            // Now update the manifest entry for the entry with new name and new digests
-                            this.updateManifest(inName, outName, digests);
-                        }
+                        bytes = this.readEntry(inEntry);
                     }
+                    PendingEntry entry = new PendingEntry(inName);
+                    entry.remapper = new ClassRemapper(inName, bytes, outJar);
+                    entry.task = new FutureTask<ZipWriter.Compressed>(entry.remapper);
+                    GuardDB.execute(executor, entry.task);
+                    pending.add(entry);
                 }
-                finally
+                else if (GuardDB.STREAM_NAME_MANIFEST.equals(inName.toUpperCase())
+                    || ((inName.length() > (GuardDB.SIGNATURE_PREFIX.length() + 1 + GuardDB.SIGNATURE_EXT.length()))
+                        && (inName.indexOf(GuardDB.SIGNATURE_PREFIX) != -1) && inName.substring(
+                        inName.length() - GuardDB.SIGNATURE_EXT.length(), inName.length()).equals(GuardDB.SIGNATURE_EXT)))
                 {
-                    if (inStream != null)
+                    // Don't pass through the manifest or signature files
+                    continue;
+                }
+                else
+                {
+                    // Copy the non-class entry through unchanged, whatever its size. Entries deflated in the input are copied
+                    // raw when written, small entries are compressed by the worker threads, and others are streamed.
+                    PendingEntry entry = new PendingEntry(inName);
+                    entry.outName = this.classTree.getOutName(inName);
+                    entry.inEntry = inEntry;
+                    RawZipFile.Entry rawEntry = (this.rawJar != null ? this.rawJar.getEntry(inName) : null);
+                    if (((rawEntry == null) || (rawEntry.getMethod() != ZipEntry.DEFLATED)) && (inEntry.getSize() != -1)
+                        && (inEntry.getSize() <= GuardDB.PARALLEL_ENTRY_SIZE))
                     {
-                        inStream.close();
+                        entry.task = new FutureTask<ZipWriter.Compressed>(new ResourceCompressor(inEntry, outJar));
+                        GuardDB.execute(executor, entry.task);
                     }
+                    pending.add(entry);
                 }
+
+                // Write out completed entries, so that only a limited number are held in memory
+                while (pending.size() > window)
+                {
+                    this.writeEntry(outJar, pending.removeFirst(), log);
+                }
+            }
+            while (!pending.isEmpty())
+            {
+                this.writeEntry(outJar, pending.removeFirst(), log);
             }
 
             // Finally, write the new manifest file
-            ZipEntry outEntry = new ZipEntry(GuardDB.STREAM_NAME_MANIFEST);
-            outJar.putNextEntry(outEntry);
-            PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(outJar)));
+            ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+            PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(manifest)));
             this.newManifest.writeString(writer);
             writer.flush();
-            outJar.closeEntry();
+            outJar.write(GuardDB.STREAM_NAME_MANIFEST, manifest.toByteArray());
         }
         finally
         {
+            if (executor != null)
+            {
+                executor.shutdownNow();
+            }
             if (outJar != null)
             {
                 outJar.close();
@@ -660,6 +866,176 @@ public class GuardDB implements ClassConstants
         }
     }
 
+    /**
+     * Read the uncompressed data of an entry in the input Jar.
+     * 
+     * @param inEntry
+     * @throws IOException
+     */
+    private byte[] readEntry(ZipEntry inEntry) throws IOException
+    {
+        InputStream inStream = this.inJar.getInputStream(inEntry);
+        try
+        {
+            return ClassDataCache.readFully(inStream, inEntry.getSize());
+        }
+        finally
+        {
+            inStream.close();
+        }
+    }
+
+    /**
+     * Write a pending entry to the output Jar, waiting for its class to be remapped or its data compressed if necessary.
+     * Other non-class entries are copied through still compressed when the input Jar allows it.
+     * 
+     * @param outJar
+     * @param entry
+     * @param log
+     * @throws IOException
+     * @throws ClassFileException
+     */
+    private void writeEntry(ZipWriter outJar, PendingEntry entry, PrintWriter log) throws IOException, ClassFileException
+    {
+        ZipWriter.Compressed compressed = null;
+        if (entry.task != null)
+        {
+            compressed = GuardDB.getResult(entry.task);
+            entry.task = null;
+            if (entry.remapper != null)
+            {
+                log.print(entry.remapper.logText);
+                entry.outName = entry.remapper.outName;
+                entry.remapper = null;
+            }
+
+            // Corrupt classes, or classes trimmed entirely, are not written
+            if (compressed == null)
+            {
+                return;
+            }
+        }
+
+        // Digests are only needed for entries with a section in the manifest
+        List<MessageDigest> digests = this.createDigests(entry.inName);
+
+        if (compressed == null)
+        {
+            // Entries stored uncompressed in the input are deflated as before, rather than copied raw
+            RawZipFile.Entry rawEntry = (this.rawJar != null ? this.rawJar.getEntry(entry.inName) : null);
+            InputStream rawStream = null;
+            if ((rawEntry != null) && (rawEntry.getMethod() == ZipEntry.DEFLATED))
+            {
+                rawStream = this.rawJar.getRawInputStream(rawEntry);
+            }
+
+            // Otherwise the data is deflated as it is read, whatever its size
+            InputStream inStream = null;
+            try
+            {
+                if (rawStream != null)
+                {
+                    outJar.writeRaw(entry.outName, rawEntry.getMethod(), rawEntry.getCrc(), rawEntry.getCompressedSize(),
+                        rawEntry.getSize(), rawStream);
+                    if (!digests.isEmpty())
+                    {
+                        inStream = this.openEntry(entry.inEntry, digests);
+                        byte[] buf = this.buffers.take();
+                        try
+                        {
+                            while (inStream.read(buf, 0, buf.length) != -1)
+                            {
+                                // digests only
+                            }
+                        }
+                        finally
+                        {
+                            this.buffers.give(buf);
+                        }
+                    }
+                }
+                else
+                {
+                    inStream = this.openEntry(entry.inEntry, digests);
+                    outJar.write(entry.outName, inStream, entry.inEntry.getSize(), entry.inEntry.getCrc());
+                }
+            }
+            finally
+            {
+                if (inStream != null)
+                {
+                    inStream.close();
+                }
+            }
+            this.updateManifest(entry.inName, entry.outName, digests);
+            return;
+        }
+
+        // Write the data, and create the digests from it
+        outJar.write(entry.outName, compressed);
+        for (MessageDigest digest : digests)
+        {
+            digest.update(compressed.getData());
+        }
+
+        // Now update the manifest entry for the entry with new name and new digests
+        this.updateManifest(entry.inName, entry.outName, digests);
+    }
+
+    /**
+     * Open an entry of the input Jar for reading, passing its data through the digest generators.
+     * 
+     * @param inEntry
+     * @param digests
+     * @throws IOException
+     */
+    private InputStream openEntry(ZipEntry inEntry, List<MessageDigest> digests) throws IOException
+    {
+        InputStream inStream = this.inJar.getInputStream(inEntry);
+        for (MessageDigest digest : digests)
+        {
+            inStream = new DigestInputStream(inStream, digest);
+        }
+        return inStream;
+    }
+
+    /**
+     * Create the digest generators for an entry, if it has a section in the manifest to take them.
+     * 
+     * @param inName
+     */
+    private List<MessageDigest> createDigests(String inName)
+    {
+        List<MessageDigest> digests = new ArrayList<MessageDigest>();
+        if (this.oldManifest.find(GuardDB.MANIFEST_NAME_TAG, inName) == null)
+        {
+            return digests;
+        }
+        if (this.enableDigestSHA)
+        {
+            try
+            {
+                digests.add(MessageDigest.getInstance("SHA-1"));
+            }
+            catch (NoSuchAlgorithmException e)
+            {
+                this.enableDigestSHA = false;
+            }
+        }
+        if (this.enableDigestMD5)
+        {
+            try
+            {
+                digests.add(MessageDigest.getInstance("MD5"));
+            }
+            catch (NoSuchAlgorithmException e)
+            {
+                this.enableDigestMD5 = false;
+            }
+        }
+        return digests;
+    }
+
     /**
      * Close input JAR file.
      */
@@ -677,6 +1053,28 @@ public class GuardDB implements ClassConstants
             }
             this.inJar = null;
         }
+        if (this.rawJar != null)
+        {
+            try
+            {
+                this.rawJar.close();
+            }
+            catch (IOException e)
+            {
+                // ignore
+            }
+            this.rawJar = null;
+        }
+        if (this.classData != null)
+        {
+            this.classData.close();
+            this.classData = null;
+        }
+        if (this.libraryIndex != null)
+        {
+            this.libraryIndex.close();
+            this.libraryIndex = null;
+        }
     }
 
     /**
@@ -785,4 +1183,224 @@ public class GuardDB implements ClassConstants
             this.newManifest.add(newSection);
         }
     }
+
+    /**
+     * An entry waiting to be written to the output Jar, in input order.
+     */
+    private static class PendingEntry
+    {
+        private String inName;
+        private String outName;
+        private ZipEntry inEntry;
+        private ClassRemapper remapper;
+        private FutureTask<ZipWriter.Compressed> task;
+
+        /**
+         * Constructor
+         * 
+         * @param inName
+         */
+        private PendingEntry(String inName)
+        {
+            this.inName = inName;
+        }
+    }
+
+    /**
+     * Reads and parses a single class file from the input Jar. Does not touch the class tree, so several classes may be parsed at
+     * once.
+     */
+    private class ClassParser implements Callable<ClassParser>
+    {
+        private ZipEntry inEntry;
+        private String name;
+        private byte[] bytes;
+        private ClassHeader cf;
+        private ClassFileException error;
+
+        /**
+         * Constructor
+         * 
+         * @param inEntry
+         */
+        private ClassParser(ZipEntry inEntry)
+        {
+            this.inEntry = inEntry;
+            this.name = inEntry.getName();
+        }
+
+        /**
+         * Read and parse the class file, recording rather than throwing any format error.
+         * 
+         * @throws IOException
+         */
+        @Override
+        public ClassParser call() throws IOException
+        {
+            this.bytes = GuardDB.this.readEntry(this.inEntry);
+            try
+            {
+                this.cf = ClassHeader.create(this.bytes);
+            }
+            catch (ClassFileException e)
+            {
+                this.error = e;
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Reads and compresses a single non-class entry from the input Jar, so that several entries may be compressed at once.
+     */
+    private class ResourceCompressor implements Callable<ZipWriter.Compressed>
+    {
+        private ZipEntry inEntry;
+        private ZipWriter outJar;
+
+        /**
+         * Constructor
+         * 
+         * @param inEntry
+         * @param outJar
+         */
+        private ResourceCompressor(ZipEntry inEntry, ZipWriter outJar)
+        {
+            this.inEntry = inEntry;
+            this.outJar = outJar;
+        }
+
+        /**
+         * Return the compressed entry data.
+         * 
+         * @throws IOException
+         */
+        @Override
+        public ZipWriter.Compressed call() throws IOException
+        {
+            return this.outJar.compress(GuardDB.this.readEntry(this.inEntry));
+        }
+    }
+
+    /**
+     * Remaps and compresses a single class file. The class tree is only read at this point, so several classes may be
+     * remapped at once; log output is collected and written when the class is written.
+     */
+    private class ClassRemapper implements Callable<ZipWriter.Compressed>
+    {
+        private String inName;
+        private byte[] inData;
+        private ZipWriter outJar;
+        private String outName;
+        private String logText = "";
+
+        /**
+         * Constructor
+         * 
+         * @param inName
+         * @param inData
+         * @param outJar
+         */
+        private ClassRemapper(String inName, byte[] inData, ZipWriter outJar)
+        {
+            this.inName = inName;
+            this.inData = inData;
+            this.outJar = outJar;
+        }
+
+        /**
+         * Return the remapped and compressed class file, or null if it is corrupt or not in the class tree.
+         * 
+         * @throws IOException
+         * @throws ClassFileException
+         */
+        @Override
+        public ZipWriter.Compressed call() throws IOException, ClassFileException
+        {
+            int inLength = this.inData.length;
+
+            // Classes which remapping would leave unchanged are written straight back, without building a ClassFile
+            ClassHeader ch = null;
+            boolean inTree = false;
+            try
+            {
+                ch = ClassHeader.create(this.inData);
+                inTree = (GuardDB.this.classTree.getCl(ch.getName()) != null);
+                if (!inTree
+                    || !ch.isUnchanged(GuardDB.this.classTree, GuardDB.this.enableMapClassString))
+                {
+                    ch = null;
+                }
+            }
+            catch (IOException e)
+            {
+                ch = null;
+            }
+            catch (ClassFileException e)
+            {
+                ch = null;
+            }
+            if (ch != null)
+            {
+                this.inData = null;
+                this.outName = ch.getName() + GuardDB.CLASS_EXT;
+                ByteArrayOutputStream bout = new ByteArrayOutputStream(inLength + 64);
+                DataOutputStream dout = new DataOutputStream(bout);
+                // To reduce output jar size in Pro, no class ID string
+                ch.write(dout, Version.isLite ? Version.getClassIdString() : null);
+                dout.flush();
+                return this.outJar.compress(bout.toByteArray());
+            }
+
+            // Attribute bodies are only decoded as they are trimmed and remapped, so corruption inside them is found there
+            ClassFile cf = null;
+            StringWriter logWriter = new StringWriter();
+            PrintWriter log = new PrintWriter(logWriter);
+            try
+            {
+                cf = ClassFile.create(new ClassDataInput(this.inData));
+                // To reduce output jar size in Pro, no class ID string
+                if (Version.isLite)
+                {
+                    cf.setIdString(Version.getClassIdString());
+                }
+                Cl cl = GuardDB.this.classTree.getCl(cf.getName());
+                // Trim entire class if requested
+                if (cl == null)
+                {
+                    return null;
+                }
+
+                cf.trimAttrs(GuardDB.this.classTree);
+                cf.updateRefCount();
+                cf.remap(GuardDB.this.classTree, log, GuardDB.this.enableMapClassString);
+            }
+            catch (ClassFileException e)
+            {
+                // Don't copy corrupt classes. Those whose header could not be read were reported while building the class
+                // tree, but those which are corrupt only inside their attributes were added to it, so report them now.
+                if (inTree)
+                {
+                    String error = GuardDB.ERROR_CORRUPT_CLASS + this.inName
+                        + " (" + (e.getMessage() != null ? e.getMessage() : "") + ")";
+                    this.logText = error + System.getProperty("line.separator");
+                    System.err.println(error);
+                }
+                return null;
+            }
+            finally
+            {
+                this.inData = null;
+            }
+            log.flush();
+            this.logText = logWriter.toString();
+            this.outName = cf.getName() + GuardDB.CLASS_EXT;
+
+            ByteArrayOutputStream bout = new ByteArrayOutputStream(inLength);
+            DataOutputStream dout = new DataOutputStream(bout);
+            cf.write(dout);
+            dout.flush();
+            return this.outJar.compress(bout.toByteArray());
+        }
+    }
 }
@@ -0,0 +1,423 @@
+/* ===========================================================================
+ * $RCSfile: LibraryCache.java,v $
+ * ===========================================================================
+ *
+ * RetroGuard -- an obfuscation package for Java classfiles.
+ *
+ * This program can be redistributed and/or modified under the terms of the
+ * Version 2 of the GNU General Public License as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+
+package com.rl.obf;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.security.*;
+import java.util.*;
+import java.util.zip.*;
+
+import com.rl.obf.classfile.*;
+
+/**
+ * Persistent index of the class headers in a library JAR. The index is written once to a binary file named for the SHA-1
+ * digest of the JAR contents, and memory-mapped on later runs, so it is only rebuilt when the JAR changes. Several runs may
+ * share a cache directory; if the index cannot be written, the one built is used from memory.
+ */
+public class LibraryCache
+{
+    // Constants -------------------------------------------------------------
+    private static final int MAGIC = 0x52474C49;
+    private static final int VERSION = 1;
+    private static final String CACHE_EXT = ".idx";
+    private static final String CLASS_EXT = ".class";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+
+    // Fields ----------------------------------------------------------------
+    /**
+     * The mapped index file, or the index built in memory
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Offset of each class record in the mapped file, by fully qualified name
+     */
+    private Map<String, Integer> offsets = new HashMap<String, Integer>();
+
+
+    // Class Methods ---------------------------------------------------------
+    /**
+     * Open the index for a library JAR, building it first if there is no index for the current JAR contents.
+     * 
+     * @param jarFile
+     * @param cacheDir
+     * @throws IOException
+     */
+    public static LibraryCache open(File jarFile, File cacheDir) throws IOException
+    {
+        String name = jarFile.getName();
+        if (name.indexOf('.') != -1)
+        {
+            name = name.substring(0, name.lastIndexOf('.'));
+        }
+        name = name + "-" + LibraryCache.digest(jarFile);
+        File cacheFile = new File(cacheDir, name + LibraryCache.CACHE_EXT);
+        if (cacheFile.isFile())
+        {
+            try
+            {
+                return new LibraryCache(LibraryCache.map(cacheFile), cacheFile.getPath());
+            }
+            catch (IOException e)
+            {
+                // unreadable or from another version, so rebuild
+            }
+        }
+        byte[] index = LibraryCache.build(jarFile);
+
+        // Write to a temporary file of this run's own, and rename it into place, so that neither a partly written index nor
+        // the index of another run building it at the same time is ever replaced or used
+        File tmpFile = null;
+        try
+        {
+            tmpFile = File.createTempFile(name + "-", ".tmp", cacheDir);
+            OutputStream out = new FileOutputStream(tmpFile);
+            try
+            {
+                out.write(index);
+            }
+            finally
+            {
+                out.close();
+            }
+            if (tmpFile.renameTo(cacheFile))
+            {
+                tmpFile = null;
+            }
+        }
+        catch (IOException e)
+        {
+            // cache directory not writable
+        }
+        finally
+        {
+            if (tmpFile != null)
+            {
+                tmpFile.delete();
+            }
+        }
+
+        // Use the index file, whether this run or another wrote it, and only otherwise the index in memory
+        if (cacheFile.isFile())
+        {
+            try
+            {
+                return new LibraryCache(LibraryCache.map(cacheFile), cacheFile.getPath());
+            }
+            catch (IOException e)
+            {
+                // not a valid index
+            }
+        }
+        return new LibraryCache(ByteBuffer.wrap(index), jarFile.getPath());
+    }
+
+    /**
+     * Map an index file into memory.
+     * 
+     * @param cacheFile
+     * @throws IOException
+     */
+    private static ByteBuffer map(File cacheFile) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(cacheFile, "r");
+        try
+        {
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /**
+     * Return the SHA-1 digest of a file's contents, in hex.
+     * 
+     * @param file
+     * @throws IOException
+     */
+    private static String digest(File file) throws IOException
+    {
+        MessageDigest md;
+        try
+        {
+            md = MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IOException("SHA-1 digest not available");
+        }
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            byte[] buf = new byte[65536];
+            int len;
+            while ((len = in.read(buf)) != -1)
+            {
+                md.update(buf, 0, len);
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md.digest())
+        {
+            sb.append(LibraryCache.HEX[(b >> 4) & 0xF]).append(LibraryCache.HEX[b & 0xF]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parse every class file in a library JAR, and return the index of their headers.
+     * 
+     * @param jarFile
+     * @throws IOException
+     */
+    private static byte[] build(File jarFile) throws IOException
+    {
+        // Write the class records first, to find their offsets
+        List<String> names = new ArrayList<String>();
+        List<Integer> offsets = new ArrayList<Integer>();
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(records);
+        ZipFile zipFile = new ZipFile(jarFile);
+        try
+        {
+            for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();)
+            {
+                ZipEntry entry = entries.nextElement();
+                String entryName = entry.getName();
+                if (entry.isDirectory() || !entryName.endsWith(LibraryCache.CLASS_EXT))
+                {
+                    continue;
+                }
+                LibraryClass lc;
+                InputStream in = zipFile.getInputStream(entry);
+                try
+                {
+                    lc = LibraryClass.create(ClassHeader.create(ClassDataCache.readFully(in, entry.getSize())));
+                }
+                catch (ClassFileException e)
+                {
+                    continue;
+                }
+                catch (IOException e)
+                {
+                    continue;
+                }
+                finally
+                {
+                    in.close();
+                }
+                names.add(entryName.substring(0, entryName.length() - LibraryCache.CLASS_EXT.length()));
+                offsets.add(Integer.valueOf(dout.size()));
+                LibraryCache.writeClass(dout, lc);
+            }
+        }
+        finally
+        {
+            zipFile.close();
+        }
+        dout.flush();
+
+        // Then the table of classes, followed by the records
+        ByteArrayOutputStream index = new ByteArrayOutputStream(records.size() + names.size() * 64 + 12);
+        DataOutputStream out = new DataOutputStream(index);
+        out.writeInt(LibraryCache.MAGIC);
+        out.writeInt(LibraryCache.VERSION);
+        out.writeInt(names.size());
+        for (int i = 0; i < names.size(); i++)
+        {
+            out.writeUTF(names.get(i));
+            out.writeInt(offsets.get(i).intValue());
+        }
+        records.writeTo(out);
+        out.flush();
+        return index.toByteArray();
+    }
+
+    /**
+     * Write the record for one class.
+     * 
+     * @param out
+     * @param lc
+     * @throws IOException
+     */
+    private static void writeClass(DataOutputStream out, LibraryClass lc) throws IOException
+    {
+        out.writeUTF(lc.getName());
+        out.writeUTF(lc.getSuperName() == null ? "" : lc.getSuperName());
+        out.writeShort(lc.getAccess());
+        out.writeShort(lc.getInterfaces().size());
+        for (String si : lc.getInterfaces())
+        {
+            out.writeUTF(si);
+        }
+        LibraryCache.writeMembers(out, lc.getMethods());
+        LibraryCache.writeMembers(out, lc.getFields());
+    }
+
+    /**
+     * Write the records for a list of methods or fields.
+     * 
+     * @param out
+     * @param members
+     * @throws IOException
+     */
+    private static void writeMembers(DataOutputStream out, List<LibraryClass.Member> members) throws IOException
+    {
+        out.writeShort(members.size());
+        for (LibraryClass.Member member : members)
+        {
+            out.writeUTF(member.getName());
+            out.writeUTF(member.getDescriptor());
+            out.writeShort(member.getAccess());
+        }
+    }
+
+    /**
+     * Read the records for a list of methods or fields.
+     * 
+     * @param in
+     * @throws IOException
+     */
+    private static List<LibraryClass.Member> readMembers(DataInputStream in) throws IOException
+    {
+        int count = in.readUnsignedShort();
+        List<LibraryClass.Member> members = new ArrayList<LibraryClass.Member>(count);
+        for (int i = 0; i < count; i++)
+        {
+            members.add(new LibraryClass.Member(in.readUTF(), in.readUTF(), in.readUnsignedShort()));
+        }
+        return members;
+    }
+
+
+    // Instance Methods ------------------------------------------------------
+    /**
+     * Constructor, which reads the table of classes of an index.
+     * 
+     * @param buffer
+     * @param source
+     * @throws IOException
+     */
+    private LibraryCache(ByteBuffer buffer, String source) throws IOException
+    {
+        this.buffer = buffer;
+        DataInputStream in = this.getStream(0);
+        if ((in.readInt() != LibraryCache.MAGIC) || (in.readInt() != LibraryCache.VERSION))
+        {
+            throw new IOException("Invalid library index " + source);
+        }
+        // Each entry of the table takes at least six bytes, so a count the file cannot hold means it is damaged
+        int count = in.readInt();
+        if ((count < 0) || (count > (in.available() / 6)))
+        {
+            throw new IOException("Invalid library index " + source);
+        }
+        String[] names = new String[count];
+        int[] offsets = new int[count];
+        for (int i = 0; i < count; i++)
+        {
+            names[i] = in.readUTF();
+            offsets[i] = in.readInt();
+        }
+
+        // Records start where the table ends
+        int start = this.buffer.capacity() - in.available();
+        for (int i = 0; i < count; i++)
+        {
+            if ((offsets[i] < 0) || (offsets[i] >= (this.buffer.capacity() - start)))
+            {
+                throw new IOException("Invalid library index " + source);
+            }
+            this.offsets.put(names[i], Integer.valueOf(start + offsets[i]));
+        }
+    }
+
+    /**
+     * Return the header information for a class in the library JAR, or null if it is not there.
+     * 
+     * @param name
+     * @throws IOException
+     */
+    public LibraryClass getClass(String name) throws IOException
+    {
+        Integer offset = this.offsets.get(name);
+        if (offset == null)
+        {
+            return null;
+        }
+        DataInputStream in = this.getStream(offset.intValue());
+        String className = in.readUTF();
+        String superName = in.readUTF();
+        int access = in.readUnsignedShort();
+        int count = in.readUnsignedShort();
+        List<String> interfaces = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++)
+        {
+            interfaces.add(in.readUTF());
+        }
+        List<LibraryClass.Member> methods = LibraryCache.readMembers(in);
+        List<LibraryClass.Member> fields = LibraryCache.readMembers(in);
+        return new LibraryClass(className, superName.length() == 0 ? null : superName, interfaces, access, methods, fields);
+    }
+
+    /**
+     * Return a stream over the index, starting at an offset.
+     * 
+     * @param offset
+     */
+    private DataInputStream getStream(int offset)
+    {
+        final ByteBuffer buf = this.buffer.duplicate();
+        buf.position(offset);
+        return new DataInputStream(new InputStream()
+        {
+            @Override
+            public int read()
+            {
+                return buf.hasRemaining() ? (buf.get() & 0xFF) : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len)
+            {
+                if (!buf.hasRemaining())
+                {
+                    return -1;
+                }
+                len = Math.min(len, buf.remaining());
+                buf.get(b, off, len);
+                return len;
+            }
+
+            @Override
+            public int available()
+            {
+                return buf.remaining();
+            }
+        });
+    }
+}
@@ -0,0 +1,199 @@
+/* ===========================================================================
+ * $RCSfile: LibraryClass.java,v $
+ * ===========================================================================
+ *
+ * RetroGuard -- an obfuscation package for Java classfiles.
+ *
+ * This program can be redistributed and/or modified under the terms of the
+ * Version 2 of the GNU General Public License as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+
+package com.rl.obf;
+
+import java.util.*;
+
+import com.rl.obf.classfile.*;
+
+/**
+ * Header information for a class or interface outside the JAR being obfuscated: its supertypes, and the names, descriptors and
+ * access flags of its members.
+ */
+public class LibraryClass implements ClassConstants
+{
+    // Constants -------------------------------------------------------------
+
+
+    // Fields ----------------------------------------------------------------
+    private String name;
+    private String superName;
+    private List<String> interfaces;
+    private int access;
+    private List<Member> methods;
+    private List<Member> fields;
+
+
+    // Class Methods ---------------------------------------------------------
+    /**
+     * Create the header information from a class file header.
+     * 
+     * @param cf
+     * @throws ClassFileException
+     */
+    public static LibraryClass create(ClassHeader cf) throws ClassFileException
+    {
+        List<Member> methods = new ArrayList<Member>();
+        for (ClassHeader.Member mi : cf.getMethods())
+        {
+            methods.add(new Member(mi.getName(), mi.getDescriptor(), mi.getAccessFlags()));
+        }
+        List<Member> fields = new ArrayList<Member>();
+        for (ClassHeader.Member fi : cf.getFields())
+        {
+            fields.add(new Member(fi.getName(), fi.getDescriptor(), fi.getAccessFlags()));
+        }
+        return new LibraryClass(cf.getName(), cf.getSuper(), cf.getInterfaces(), cf.getModifiers(), methods, fields);
+    }
+
+
+    // Instance Methods ------------------------------------------------------
+    /**
+     * Constructor
+     * 
+     * @param name
+     * @param superName
+     * @param interfaces
+     * @param access
+     * @param methods
+     * @param fields
+     */
+    public LibraryClass(String name, String superName, List<String> interfaces, int access, List<Member> methods,
+        List<Member> fields)
+    {
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = interfaces;
+        this.access = access;
+        this.methods = methods;
+        this.fields = fields;
+    }
+
+    /**
+     * Return the fully qualified name.
+     */
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /**
+     * Return the fully qualified name of the super class, as reflection would report it (null for interfaces and
+     * java/lang/Object).
+     */
+    public String getSuperName()
+    {
+        return (this.isInterface() ? null : this.superName);
+    }
+
+    /**
+     * Return the fully qualified names of the directly implemented interfaces.
+     */
+    public List<String> getInterfaces()
+    {
+        return this.interfaces;
+    }
+
+    /**
+     * Return the access flags.
+     */
+    public int getAccess()
+    {
+        return this.access;
+    }
+
+    /**
+     * Is this an interface?
+     */
+    public boolean isInterface()
+    {
+        return (this.access & ClassConstants.ACC_INTERFACE) != 0;
+    }
+
+    /**
+     * Return the declared methods, including initializers.
+     */
+    public List<Member> getMethods()
+    {
+        return this.methods;
+    }
+
+    /**
+     * Return the declared fields.
+     */
+    public List<Member> getFields()
+    {
+        return this.fields;
+    }
+
+    /**
+     * A method or field of a library class.
+     */
+    public static class Member
+    {
+        private String name;
+        private String descriptor;
+        private int access;
+
+        /**
+         * Constructor
+         * 
+         * @param name
+         * @param descriptor
+         * @param access
+         */
+        public Member(String name, String descriptor, int access)
+        {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.access = access;
+        }
+
+        /**
+         * Return the member name.
+         */
+        public String getName()
+        {
+            return this.name;
+        }
+
+        /**
+         * Return the member descriptor.
+         */
+        public String getDescriptor()
+        {
+            return this.descriptor;
+        }
+
+        /**
+         * Return the member access flags.
+         */
+        public int getAccess()
+        {
+            return this.access;
+        }
+
+        /**
+         * Is the member one of the methods run when creating an instance or initialising the class?
+         */
+        public boolean isInitializer()
+        {
+            return this.name.equals("<init>") || this.name.equals("<clinit>");
+        }
+    }
+}
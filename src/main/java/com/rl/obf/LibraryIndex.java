@@ -0,0 +1,335 @@
+/* ===========================================================================
+ * $RCSfile: LibraryIndex.java,v $
+ * ===========================================================================
+ *
+ * RetroGuard -- an obfuscation package for Java classfiles.
+ *
+ * This program can be redistributed and/or modified under the terms of the
+ * Version 2 of the GNU General Public License as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+
+package com.rl.obf;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+import com.rl.obf.classfile.*;
+
+/**
+ * Index of the classes and interfaces outside the JAR being obfuscated, read from the class files of the configured library
+ * JARs and directories, and then from the class files available to the running JVM. No class is ever loaded.
+ */
+public class LibraryIndex implements ClassConstants
+{
+    // Constants -------------------------------------------------------------
+    private static final String CLASS_EXT = ".class";
+
+
+    // Fields ----------------------------------------------------------------
+    /**
+     * Library JARs (as ZipFile, or LibraryCache when indexes are cached) and directories (as File), in search order
+     */
+    private List<Object> sources = new ArrayList<Object>();
+
+    /**
+     * Classes read so far, by fully qualified name
+     */
+    private Map<String, LibraryClass> classes = new HashMap<String, LibraryClass>();
+
+    /**
+     * Names already searched for and not found
+     */
+    private Set<String> missing = new HashSet<String>();
+
+
+    // Class Methods ---------------------------------------------------------
+
+
+    // Instance Methods ------------------------------------------------------
+    /**
+     * Constructor
+     * 
+     * @param classpath
+     * @param cacheDir
+     * @throws IOException
+     */
+    public LibraryIndex(List<File> classpath, File cacheDir) throws IOException
+    {
+        for (File file : classpath)
+        {
+            if (file.isDirectory())
+            {
+                this.sources.add(file);
+            }
+            else if (cacheDir != null)
+            {
+                this.sources.add(LibraryCache.open(file, cacheDir));
+            }
+            else
+            {
+                this.sources.add(new ZipFile(file));
+            }
+        }
+    }
+
+    /**
+     * Return the named class or interface, or null if it cannot be found.
+     * 
+     * @param name
+     */
+    public synchronized LibraryClass getClass(String name)
+    {
+        if (name == null)
+        {
+            return null;
+        }
+        LibraryClass lc = this.classes.get(name);
+        if ((lc == null) && !this.missing.contains(name))
+        {
+            lc = this.readClass(name);
+            if (lc != null)
+            {
+                this.classes.put(name, lc);
+            }
+            else
+            {
+                this.missing.add(name);
+            }
+        }
+        return lc;
+    }
+
+    /**
+     * Return the methods visible through reflection as the public methods of a class and all methods declared in its super
+     * classes, i.e. what {@code getMethods()} and {@code getDeclaredMethods()} up the super class chain would return.
+     * 
+     * @param lc
+     */
+    public List<LibraryClass.Member> getAllDeclaredMethods(LibraryClass lc)
+    {
+        List<LibraryClass.Member> methods = new ArrayList<LibraryClass.Member>();
+        Set<String> visited = new HashSet<String>();
+        for (LibraryClass cl = lc; cl != null; cl = this.getClass(cl.getSuperName()))
+        {
+            for (LibraryClass.Member md : cl.getMethods())
+            {
+                if (!md.isInitializer())
+                {
+                    methods.add(md);
+                }
+            }
+            for (String si : cl.getInterfaces())
+            {
+                this.addInterfaceMethods(this.getClass(si), methods, visited);
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * Add the public, non-static methods of an interface and its super interfaces.
+     * 
+     * @param lc
+     * @param methods
+     * @param visited
+     */
+    private void addInterfaceMethods(LibraryClass lc, List<LibraryClass.Member> methods, Set<String> visited)
+    {
+        if ((lc == null) || !visited.add(lc.getName()))
+        {
+            return;
+        }
+        for (LibraryClass.Member md : lc.getMethods())
+        {
+            int access = md.getAccess();
+            if (((access & ClassConstants.ACC_PUBLIC) != 0) && ((access & ClassConstants.ACC_STATIC) == 0)
+                && !md.isInitializer())
+            {
+                methods.add(md);
+            }
+        }
+        for (String si : lc.getInterfaces())
+        {
+            this.addInterfaceMethods(this.getClass(si), methods, visited);
+        }
+    }
+
+    /**
+     * Return the named field of a class regardless of access level, searching the super classes and then the interfaces as
+     * reflection would, or null if there is none.
+     * 
+     * @param lc
+     * @param name
+     */
+    public LibraryClass.Member getAllDeclaredField(LibraryClass lc, String name)
+    {
+        // Check for field in supers
+        for (LibraryClass cl = lc; cl != null; cl = this.getClass(cl.getSuperName()))
+        {
+            for (LibraryClass.Member fd : cl.getFields())
+            {
+                if (fd.getName().equals(name))
+                {
+                    return fd;
+                }
+            }
+        }
+
+        // Check for field in interfaces of the class and its supers
+        Set<String> visited = new HashSet<String>();
+        for (LibraryClass cl = lc; cl != null; cl = this.getClass(cl.getSuperName()))
+        {
+            for (String si : cl.getInterfaces())
+            {
+                LibraryClass.Member fd = this.getInterfaceField(this.getClass(si), name, visited);
+                if (fd != null)
+                {
+                    return fd;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the named field of an interface or its super interfaces, or null if there is none.
+     * 
+     * @param lc
+     * @param name
+     * @param visited
+     */
+    private LibraryClass.Member getInterfaceField(LibraryClass lc, String name, Set<String> visited)
+    {
+        if ((lc == null) || !visited.add(lc.getName()))
+        {
+            return null;
+        }
+        for (LibraryClass.Member fd : lc.getFields())
+        {
+            if (fd.getName().equals(name))
+            {
+                return fd;
+            }
+        }
+        for (String si : lc.getInterfaces())
+        {
+            LibraryClass.Member fd = this.getInterfaceField(this.getClass(si), name, visited);
+            if (fd != null)
+            {
+                return fd;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Close the library JARs.
+     */
+    public synchronized void close()
+    {
+        for (Object source : this.sources)
+        {
+            if (source instanceof ZipFile)
+            {
+                try
+                {
+                    ((ZipFile)source).close();
+                }
+                catch (IOException e)
+                {
+                    // ignore
+                }
+            }
+        }
+        this.sources.clear();
+    }
+
+    /**
+     * Find and parse the class file for a class, or return null if there is none or it is unreadable.
+     * 
+     * @param name
+     */
+    private LibraryClass readClass(String name)
+    {
+        String fileName = name + LibraryIndex.CLASS_EXT;
+        try
+        {
+            for (Object source : this.sources)
+            {
+                InputStream in = null;
+                if (source instanceof LibraryCache)
+                {
+                    LibraryClass lc = ((LibraryCache)source).getClass(name);
+                    if (lc != null)
+                    {
+                        return lc;
+                    }
+                }
+                else if (source instanceof ZipFile)
+                {
+                    ZipFile zipFile = (ZipFile)source;
+                    ZipEntry entry = zipFile.getEntry(fileName);
+                    if (entry != null)
+                    {
+                        in = zipFile.getInputStream(entry);
+                    }
+                }
+                else
+                {
+                    File file = new File((File)source, fileName);
+                    if (file.isFile())
+                    {
+                        in = new FileInputStream(file);
+                    }
+                }
+                if (in != null)
+                {
+                    return LibraryIndex.parse(in);
+                }
+            }
+
+            // Last of all, look for the class file on the classpath of the running JVM
+            InputStream in = ClassLoader.getSystemResourceAsStream(fileName);
+            if (in != null)
+            {
+                return LibraryIndex.parse(in);
+            }
+        }
+        catch (IOException e)
+        {
+            // fall thru
+        }
+        catch (ClassFileException e)
+        {
+            // fall thru
+        }
+        return null;
+    }
+
+    /**
+     * Parse a class file and close the stream.
+     * 
+     * @param in
+     * @throws IOException
+     * @throws ClassFileException
+     */
+    private static LibraryClass parse(InputStream in) throws IOException, ClassFileException
+    {
+        try
+        {
+            return LibraryClass.create(ClassHeader.create(ClassDataCache.readFully(in, -1)));
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
@@ -120,6 +120,15 @@ abstract public class MdFd extends TreeItem
         return this.isOverride;
     }
 
+    /**
+     * Methods and fields are leaves of the tree, so a change to their names leaves every other full name as it is.
+     */
+    @Override
+    protected void namesChanged()
+    {
+        // do nothing
+    }
+
     /**
      * Does this member match the wildcard pattern? (** and * supported)
      * 
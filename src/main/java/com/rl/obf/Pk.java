@@ -157,10 +157,10 @@ public class Pk extends PkCl
     }
 
     /**
-     * Construct and return the full obfuscated name of the entry.
+     * Construct the full obfuscated name of the entry.
      */
     @Override
-    public String getFullOutName()
+    protected String buildFullOutName()
     {
         String repackageName = this.getRepackageName();
 
@@ -179,6 +179,6 @@ public class Pk extends PkCl
             }
         }
 
-        return super.getFullOutName();
+        return super.buildFullOutName();
     }
 }
@@ -187,6 +187,7 @@ abstract public class PkCl extends TreeItem
         {
             this.repackageName = repackageName;
         }
+        this.namesChanged();
     }
 
     /**
@@ -221,17 +222,6 @@ abstract public class PkCl extends TreeItem
     {
         for (TreeItem ti : hash.values())
         {
-            String fullInName = ti.getFullInName(true);
-            String thisType = "Misc";
-            if (ti instanceof Pk)
-            {
-                thisType = "Package";
-            }
-            if (ti instanceof Cl)
-            {
-                thisType = "Class";
-            }
-
             if ((NameProvider.currentMode != NameProvider.CLASSIC_MODE) || (!ti.isFixed()))
             {
                 String theOutName = NameProvider.getNewTreeItemName(ti);
@@ -239,44 +229,26 @@ abstract public class PkCl extends TreeItem
                 {
                     ti.setOutName(theOutName);
                     ti.setFromScriptMap();
-                    String fullOutName = ti.getFullOutName(true);
-                    if (fullOutName.equals(fullInName))
-                    {
-                        NameProvider.verboseLog("# " + thisType + " " + fullInName + " unchanged from name maker");
-                    }
-                    else
-                    {
-                        NameProvider.verboseLog("# " + thisType + " " + fullInName + " renamed to "
-                            + fullOutName + " from name maker");
-                    }
+                    NameProvider.verboseDecision(ti, NameProvider.NameSource.NAME_MAKER);
                 }
                 else
                 {
-                    NameProvider.verboseLog("# " + thisType + " " + fullInName + " null from name maker");
+                    NameProvider.verboseDecision(ti, NameProvider.NameSource.NO_NAME);
                 }
             }
             else if (ti.isFixed())
             {
                 if (ti.isFromScriptMap())
                 {
-                    String fullOutName = ti.getFullOutName(true);
-                    if (fullOutName.equals(fullInName))
-                    {
-                        NameProvider.verboseLog("# " + thisType + " " + fullInName + " unchanged from ScriptMap");
-                    }
-                    else
-                    {
-                        NameProvider.verboseLog("# " + thisType + " " + fullInName + " renamed to "
-                            + fullOutName + " from ScriptMap");
-                    }
+                    NameProvider.verboseDecision(ti, NameProvider.NameSource.SCRIPT_MAP);
                 }
                 else if (ti.isFromScript())
                 {
-                    NameProvider.verboseLog("# " + thisType + " " + fullInName + " fixed from Script");
+                    NameProvider.verboseDecision(ti, NameProvider.NameSource.SCRIPT);
                 }
                 else
                 {
-                    NameProvider.verboseLog("# " + thisType + " " + fullInName + " fixed");
+                    NameProvider.verboseDecision(ti, NameProvider.NameSource.FIXED);
                 }
             }
         }
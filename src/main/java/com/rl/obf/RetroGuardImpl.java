@@ -22,6 +22,7 @@ package com.rl.obf;
 import java.io.*;
 import java.util.*;
 
+import com.rl.NameProvider;
 import com.rl.obf.classfile.ClassFile;
 
 /**
@@ -179,7 +180,14 @@ public class RetroGuardImpl
                 {
                     rgsInputStream.close();
                 }
-                db.remapTo(this.outFile, log);
+                if (NameProvider.mapOnly)
+                {
+                    db.writeMap(log);
+                }
+                else
+                {
+                    db.remapTo(this.outFile, log);
+                }
             }
             finally
             {
@@ -210,6 +218,7 @@ public class RetroGuardImpl
         }
         finally
         {
+            NameProvider.closeLog();
             if (log != null)
             {
                 log.flush();
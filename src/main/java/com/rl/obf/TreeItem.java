@@ -93,6 +93,21 @@ public class TreeItem
      */
     protected boolean isOutput = false;
 
+    /**
+     * Full original name, built on first use
+     */
+    private volatile String fullInName = null;
+
+    /**
+     * Full output name, built on first use and rebuilt when names in the tree change
+     */
+    private volatile FullName fullOutName = null;
+
+    /**
+     * Count of changes to the name or the parent of this entry, which invalidate its own full output name
+     */
+    private volatile int ownNameVersion = 0;
+
 
     // Class Methods ---------------------------------------------------------
     /**
@@ -291,6 +306,8 @@ public class TreeItem
     {
         this.outName = outName;
         this.isFixed = true;
+        this.ownNameVersion++;
+        this.namesChanged();
     }
 
     /**
@@ -412,6 +429,21 @@ public class TreeItem
     public void setParent(TreeItem parent)
     {
         this.parent = parent;
+        this.fullInName = null;
+        this.ownNameVersion++;
+        this.namesChanged();
+    }
+
+    /**
+     * Invalidate the cached full output names in the tree, after a change to the name or the parent of this entry; over-ride
+     * this for entries which are never part of another entry's full name.
+     */
+    protected void namesChanged()
+    {
+        if (this.classTree != null)
+        {
+            this.classTree.namesChanged();
+        }
     }
 
     /**
@@ -427,12 +459,20 @@ public class TreeItem
      */
     public String getFullInName()
     {
-        if (this.parent == null)
+        String s = this.fullInName;
+        if (s == null)
         {
-            return this.getInName();
+            if (this.parent == null)
+            {
+                s = this.getInName();
+            }
+            else
+            {
+                s = TreeItem.joinName(this.parent.getFullInName(), this.sep, this.getInName());
+            }
+            this.fullInName = s;
         }
-
-        return TreeItem.joinName(this.parent.getFullInName(), this.sep, this.getInName());
+        return s;
     }
 
     /**
@@ -457,6 +497,27 @@ public class TreeItem
      * Construct and return the full modified name of the entry.
      */
     public String getFullOutName()
+    {
+        if (this.classTree == null)
+        {
+            return this.buildFullOutName();
+        }
+
+        int version = this.classTree.getNameVersion();
+        int ownVersion = this.ownNameVersion;
+        FullName name = this.fullOutName;
+        if ((name == null) || (name.version != version) || (name.ownVersion != ownVersion))
+        {
+            name = new FullName(this.buildFullOutName(), version, ownVersion);
+            this.fullOutName = name;
+        }
+        return name.name;
+    }
+
+    /**
+     * Construct the full modified name of the entry.
+     */
+    protected String buildFullOutName()
     {
         if (this.parent == null)
         {
@@ -516,4 +577,21 @@ public class TreeItem
     {
         return TreeItem.isGMatch(pattern, this.getFullInName());
     }
+
+    /**
+     * A full name, with the versions of the tree's names and the entry's own name it was built from.
+     */
+    private static class FullName
+    {
+        private final String name;
+        private final int version;
+        private final int ownVersion;
+
+        private FullName(String name, int version, int ownVersion)
+        {
+            this.name = name;
+            this.version = version;
+            this.ownVersion = ownVersion;
+        }
+    }
 }
@@ -0,0 +1,70 @@
+/* ===========================================================================
+ * $RCSfile: WalkFrame.java,v $
+ * ===========================================================================
+ *
+ * RetroGuard -- an obfuscation package for Java classfiles.
+ *
+ * This program can be redistributed and/or modified under the terms of the
+ * Version 2 of the GNU General Public License as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+
+package com.rl.obf;
+
+import java.util.*;
+
+import com.rl.obf.classfile.*;
+
+/**
+ * One item in a depth first walk which keeps its place on an explicit stack rather than the thread's stack, so that deep
+ * trees and highly connected class graphs cannot overflow it. A frame hands out the frames for the items below it one at a
+ * time, and can do its own work before, between or after them.
+ */
+public abstract class WalkFrame
+{
+    // Constants -------------------------------------------------------------
+
+
+    // Fields ----------------------------------------------------------------
+
+
+    // Class Methods ---------------------------------------------------------
+    /**
+     * Walk depth first from a frame, finishing the walk below each item before asking its frame for the next.
+     * 
+     * @param start
+     * @throws ClassFileException
+     */
+    public static void walk(WalkFrame start) throws ClassFileException
+    {
+        List<WalkFrame> stack = new ArrayList<WalkFrame>();
+        stack.add(start);
+        while (!stack.isEmpty())
+        {
+            WalkFrame next = stack.get(stack.size() - 1).next();
+            if (next != null)
+            {
+                stack.add(next);
+            }
+            else
+            {
+                stack.remove(stack.size() - 1);
+            }
+        }
+    }
+
+
+    // Instance Methods ------------------------------------------------------
+    /**
+     * Return the frame for the next item to walk below this one, or null when there are no more.
+     * 
+     * @throws ClassFileException
+     */
+    protected abstract WalkFrame next() throws ClassFileException;
+}
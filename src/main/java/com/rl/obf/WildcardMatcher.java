@@ -0,0 +1,319 @@
+/* ===========================================================================
+ * $RCSfile: WildcardMatcher.java,v $
+ * ===========================================================================
+ *
+ * RetroGuard -- an obfuscation package for Java classfiles.
+ *
+ * This program can be redistributed and/or modified under the terms of the
+ * Version 2 of the GNU General Public License as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+
+package com.rl.obf;
+
+import java.util.*;
+
+/**
+ * A wildcard pattern compiled once, for matching against many names. Matches are the same as TreeItem.isMatch (for patterns
+ * created by create) and TreeItem.isGMatch (for patterns created by createGeneral), without creating any objects.
+ */
+public class WildcardMatcher
+{
+    // Constants -------------------------------------------------------------
+
+
+    // Fields ----------------------------------------------------------------
+    private String pattern;
+
+    /**
+     * Compiled pattern for a simple match, or null for a generalized match
+     */
+    private Glob glob;
+
+    /**
+     * Compiled package level segments for a generalized match, and the index of the '**' segment (-1 if there is none)
+     */
+    private Glob[] segments;
+    private int sc = -1;
+
+    /**
+     * Leading package levels that every matching name must start with
+     */
+    private String[] prefix;
+
+
+    // Class Methods ---------------------------------------------------------
+    /**
+     * Compile a pattern in which '*' matches any characters.
+     * 
+     * @param pattern
+     */
+    public static WildcardMatcher create(String pattern)
+    {
+        WildcardMatcher matcher = new WildcardMatcher(pattern);
+        matcher.glob = new Glob(pattern);
+
+        // Levels wholly before the first wildcard are literal, except for the last level which names the item itself
+        String literal = pattern;
+        if (literal.indexOf('*') != -1)
+        {
+            literal = literal.substring(0, literal.indexOf('*'));
+        }
+        int end = Math.min(literal.lastIndexOf(ClassTree.PACKAGE_LEVEL), pattern.lastIndexOf(ClassTree.PACKAGE_LEVEL));
+        List<String> levels = new ArrayList<String>();
+        int from = 0;
+        while (from <= end)
+        {
+            int to = pattern.indexOf(ClassTree.PACKAGE_LEVEL, from);
+            levels.add(pattern.substring(from, to));
+            from = to + 1;
+        }
+        matcher.prefix = levels.toArray(new String[levels.size()]);
+        return matcher;
+    }
+
+    /**
+     * Compile a pattern in which '*' matches within a package level, and '**' matches across package levels.
+     * 
+     * @param pattern
+     */
+    public static WildcardMatcher createGeneral(String pattern)
+    {
+        WildcardMatcher matcher = new WildcardMatcher(pattern);
+        PatternList pl = PatternList.create(pattern);
+        matcher.segments = new Glob[pl.length()];
+        for (int i = 0; i < pl.length(); i++)
+        {
+            matcher.segments[i] = new Glob(pl.getSub(i));
+        }
+        matcher.sc = pl.scIndex();
+
+        // Levels before the first wildcard are literal, except for the last level which names the item itself
+        int end = pl.scExists() ? pl.scIndex() : pl.length() - 1;
+        List<String> levels = new ArrayList<String>();
+        for (int i = 0; (i < end) && (pl.getSub(i).indexOf('*') == -1); i++)
+        {
+            levels.add(pl.getSub(i));
+        }
+        matcher.prefix = levels.toArray(new String[levels.size()]);
+        return matcher;
+    }
+
+
+    // Instance Methods ------------------------------------------------------
+    /**
+     * Private constructor
+     * 
+     * @param pattern
+     */
+    private WildcardMatcher(String pattern)
+    {
+        this.pattern = pattern;
+    }
+
+    /**
+     * Return the pattern.
+     */
+    public String getPattern()
+    {
+        return this.pattern;
+    }
+
+    /**
+     * Return the leading package levels which every matching name must have, when the name contains no wildcards itself.
+     */
+    public String[] getPrefix()
+    {
+        return this.prefix;
+    }
+
+    /**
+     * Does the string match the pattern?
+     * 
+     * @param string
+     */
+    public boolean matches(String string)
+    {
+        if (string == null)
+        {
+            return false;
+        }
+        if (this.glob != null)
+        {
+            return this.glob.matches(string, 0, string.length());
+        }
+
+        // Count the package levels
+        int length = 1;
+        for (int i = 0; i < string.length(); i++)
+        {
+            char c = string.charAt(i);
+            if (c == ClassTree.PACKAGE_LEVEL)
+            {
+                length++;
+            }
+            else if (c == '*')
+            {
+                // Only wildcards are expected in patterns
+                return TreeItem.isGMatch(this.pattern, string);
+            }
+        }
+
+        if (this.sc < 0)
+        {
+            if (length != this.segments.length)
+            {
+                return false;
+            }
+            int from = 0;
+            for (Glob segment : this.segments)
+            {
+                int to = string.indexOf(ClassTree.PACKAGE_LEVEL, from);
+                if (to == -1)
+                {
+                    to = string.length();
+                }
+                if (!segment.matches(string, from, to))
+                {
+                    return false;
+                }
+                from = to + 1;
+            }
+            return true;
+        }
+
+        if (this.segments.length > length)
+        {
+            return false;
+        }
+        // check the head segments (pre-** segment)
+        int from = 0;
+        for (int i = 0; i < this.sc; i++)
+        {
+            int to = string.indexOf(ClassTree.PACKAGE_LEVEL, from);
+            if (!this.segments[i].matches(string, from, to))
+            {
+                return false;
+            }
+            from = to + 1;
+        }
+        // check the tail segments (post-** segment)
+        int to = string.length();
+        for (int i = this.segments.length - 1; i > this.sc; i--)
+        {
+            int start = string.lastIndexOf(ClassTree.PACKAGE_LEVEL, to - 1) + 1;
+            if (!this.segments[i].matches(string, start, to))
+            {
+                return false;
+            }
+            to = start - 1;
+        }
+        // check the merged central segments against the ** segment
+        return this.segments[this.sc].matches(string, from, to);
+    }
+
+    /**
+     * A pattern in which '*' matches any characters, split at the wildcards.
+     */
+    private static class Glob
+    {
+        private String literal;
+        private String head;
+        private String tail;
+        private String[] chunks;
+
+        /**
+         * Constructor
+         * 
+         * @param pattern
+         */
+        private Glob(String pattern)
+        {
+            if (pattern == null)
+            {
+                return;
+            }
+            if (pattern.indexOf('*') == -1)
+            {
+                this.literal = pattern;
+                return;
+            }
+            if (pattern.charAt(0) != '*')
+            {
+                int pos = pattern.indexOf('*');
+                this.head = pattern.substring(0, pos);
+                pattern = pattern.substring(pos);
+            }
+            if (pattern.charAt(pattern.length() - 1) != '*')
+            {
+                int pos = pattern.lastIndexOf('*');
+                this.tail = pattern.substring(pos + 1);
+                pattern = pattern.substring(0, pos + 1);
+            }
+            List<String> section = new ArrayList<String>();
+            int pos = pattern.indexOf('*');
+            int rpos = -1;
+            while ((rpos = pattern.indexOf('*', pos + 1)) != -1)
+            {
+                if (rpos != (pos + 1))
+                {
+                    section.add(pattern.substring(pos + 1, rpos));
+                }
+                pos = rpos;
+            }
+            this.chunks = section.toArray(new String[section.size()]);
+        }
+
+        /**
+         * Does the given part of the string match?
+         * 
+         * @param string
+         * @param from
+         * @param to
+         */
+        private boolean matches(String string, int from, int to)
+        {
+            if (this.literal != null)
+            {
+                return ((to - from) == this.literal.length()) && string.startsWith(this.literal, from);
+            }
+            if (this.chunks == null)
+            {
+                // null pattern
+                return false;
+            }
+            if (this.head != null)
+            {
+                if (((to - from) < this.head.length()) || !string.startsWith(this.head, from))
+                {
+                    return false;
+                }
+                from += this.head.length();
+            }
+            if (this.tail != null)
+            {
+                if (((to - from) < this.tail.length()) || !string.startsWith(this.tail, to - this.tail.length()))
+                {
+                    return false;
+                }
+                to -= this.tail.length();
+            }
+            for (String chunk : this.chunks)
+            {
+                int pos = string.indexOf(chunk, from);
+                if ((pos == -1) || ((pos + chunk.length()) > to))
+                {
+                    return false;
+                }
+                from = pos + chunk.length();
+            }
+            return true;
+        }
+    }
+}
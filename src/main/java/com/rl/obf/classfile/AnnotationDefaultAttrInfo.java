@@ -61,6 +61,15 @@ public class AnnotationDefaultAttrInfo extends AttrInfo
         return ClassConstants.ATTR_AnnotationDefault;
     }
 
+    /**
+     * The 'info' data refers to Utf8 entries in the constant pool, so must be decoded.
+     */
+    @Override
+    protected boolean hasUtf8RefsInInfo()
+    {
+        return true;
+    }
+
     /**
      * Return the default value.
      */
@@ -105,12 +114,12 @@ public class AnnotationDefaultAttrInfo extends AttrInfo
     }
 
     /**
-     * Do necessary name remapping.
+     * Do necessary name remapping in the 'info' data.
      * 
      * @throws ClassFileException
      */
     @Override
-    protected void remap(ClassFile cf, NameMapper nm) throws ClassFileException
+    protected void remapInfo(ClassFile cf, NameMapper nm) throws ClassFileException
     {
         this.defaultValue.remap(cf, nm);
     }
@@ -52,6 +52,15 @@ abstract public class AnnotationsAttrInfo extends AttrInfo
         super(cf, attrNameIndex, attrLength);
     }
 
+    /**
+     * The 'info' data refers to Utf8 entries in the constant pool, so must be decoded.
+     */
+    @Override
+    protected boolean hasUtf8RefsInInfo()
+    {
+        return true;
+    }
+
     /**
      * Check for Utf8 references in the 'info' data to the constant pool and mark them.
      * 
@@ -100,12 +109,12 @@ abstract public class AnnotationsAttrInfo extends AttrInfo
     }
 
     /**
-     * Do necessary name remapping.
+     * Do necessary name remapping in the 'info' data.
      * 
      * @throws ClassFileException
      */
     @Override
-    protected void remap(ClassFile cf, NameMapper nm) throws ClassFileException
+    protected void remapInfo(ClassFile cf, NameMapper nm) throws ClassFileException
     {
         for (AnnotationInfo ai : this.annotationTable)
         {
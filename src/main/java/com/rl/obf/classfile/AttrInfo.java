@@ -37,6 +37,12 @@ public class AttrInfo implements ClassConstants
     private int u2attrNameIndex;
     private int u4attrLength;
     private byte info[];
+
+    /**
+     * Offset of the 'info' data in the info array, which is the class file data itself when that was read from a
+     * ClassDataInput
+     */
+    private int infoOffset = 0;
     protected AttrSource source;
 
     protected ClassFile cf;
@@ -144,7 +150,25 @@ public class AttrInfo implements ClassConstants
             ai = new AttrInfo(cf, attrNameIndex, attrLength);
         }
         ai.source = source;
-        ai.readInfo(din);
+
+        // Keep the 'info' data undecoded until it has to be looked inside, except for 'Code' which holds the attributes of the
+        // method body
+        if (din instanceof ClassDataInput)
+        {
+            ClassDataInput cdin = (ClassDataInput)din;
+            ai.info = cdin.getData();
+            ai.infoOffset = cdin.getPosition();
+            cdin.skipFully(attrLength);
+        }
+        else
+        {
+            ai.info = new byte[attrLength];
+            din.readFully(ai.info);
+        }
+        if (ai instanceof CodeAttrInfo)
+        {
+            ai.decode();
+        }
         return ai;
     }
 
@@ -172,6 +196,39 @@ public class AttrInfo implements ClassConstants
         return this.u4attrLength;
     }
 
+    /**
+     * Does the 'info' data refer to Utf8 entries in the constant pool, or hold other attributes? If not, it is never decoded,
+     * and is written back as it was read; over-ride this in sub-classes.
+     */
+    @SuppressWarnings("static-method")
+    protected boolean hasUtf8RefsInInfo()
+    {
+        return false;
+    }
+
+    /**
+     * Decode the 'info' data, if that has not been done yet.
+     * 
+     * @throws ClassFileException
+     */
+    private void decode() throws ClassFileException
+    {
+        if (this.info == null)
+        {
+            return;
+        }
+        byte[] data = this.info;
+        this.info = null;
+        try
+        {
+            this.readInfo(new ClassDataInput(data, this.infoOffset, this.u4attrLength));
+        }
+        catch (IOException e)
+        {
+            throw new ClassFileException("Truncated attribute in class file.");
+        }
+    }
+
     /**
      * Return the String name of the attribute; over-ride this in sub-classes.
      */
@@ -200,7 +257,11 @@ public class AttrInfo implements ClassConstants
     protected void markUtf8Refs(ConstantPool pool) throws ClassFileException
     {
         pool.incRefCount(this.u2attrNameIndex);
-        this.markUtf8RefsInInfo(pool);
+        if (this.hasUtf8RefsInInfo())
+        {
+            this.decode();
+            this.markUtf8RefsInInfo(pool);
+        }
     }
 
     /**
@@ -224,6 +285,7 @@ public class AttrInfo implements ClassConstants
     protected void readInfo(DataInput din) throws IOException, ClassFileException
     {
         this.info = new byte[this.u4attrLength];
+        this.infoOffset = 0;
         din.readFully(this.info);
     }
 
@@ -241,6 +303,13 @@ public class AttrInfo implements ClassConstants
             throw new IOException("No output stream was provided.");
         }
         dout.writeShort(this.u2attrNameIndex);
+        if (this.info != null)
+        {
+            // Never decoded, so copy the 'info' data through
+            dout.writeInt(this.u4attrLength);
+            dout.write(this.info, this.infoOffset, this.u4attrLength);
+            return;
+        }
         dout.writeInt(this.getAttrInfoLength());
         this.writeInfo(dout);
     }
@@ -254,7 +323,7 @@ public class AttrInfo implements ClassConstants
      */
     public void writeInfo(DataOutput dout) throws IOException, ClassFileException
     {
-        dout.write(this.info);
+        dout.write(this.info, this.infoOffset, this.u4attrLength);
     }
 
     /**
@@ -265,6 +334,22 @@ public class AttrInfo implements ClassConstants
      * @throws ClassFileException
      */
     protected void remap(ClassFile cf, NameMapper nm) throws ClassFileException
+    {
+        if (this.hasUtf8RefsInInfo())
+        {
+            this.decode();
+            this.remapInfo(cf, nm);
+        }
+    }
+
+    /**
+     * Do necessary name remapping in the 'info' data; over-ride this in sub-classes.
+     * 
+     * @param cf
+     * @param nm
+     * @throws ClassFileException
+     */
+    protected void remapInfo(ClassFile cf, NameMapper nm) throws ClassFileException
     {
         // do nothing
     }
@@ -0,0 +1,123 @@
+/* ===========================================================================
+ * $RCSfile: ClassDataInput.java,v $
+ * ===========================================================================
+ *
+ * RetroGuard -- an obfuscation package for Java classfiles.
+ *
+ * This program can be redistributed and/or modified under the terms of the
+ * Version 2 of the GNU General Public License as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+
+package com.rl.obf.classfile;
+
+import java.io.*;
+
+/**
+ * Class file data read from a byte array, which knows its position in the array. Parts of the class file which are written
+ * back unchanged can then be kept as ranges of the array rather than copied out of it.
+ */
+public class ClassDataInput extends DataInputStream
+{
+    // Constants -------------------------------------------------------------
+
+
+    // Fields ----------------------------------------------------------------
+
+
+    // Class Methods ---------------------------------------------------------
+
+
+    // Instance Methods ------------------------------------------------------
+    /**
+     * Constructor
+     *
+     * @param data
+     */
+    public ClassDataInput(byte[] data)
+    {
+        this(data, 0, data.length);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param data
+     * @param offset
+     * @param length
+     */
+    public ClassDataInput(byte[] data, int offset, int length)
+    {
+        super(new Buffer(data, offset, length));
+    }
+
+    /**
+     * Return the array being read.
+     */
+    public byte[] getData()
+    {
+        return ((Buffer)this.in).getData();
+    }
+
+    /**
+     * Return the offset in the array of the next byte to be read.
+     */
+    public int getPosition()
+    {
+        return ((Buffer)this.in).getPosition();
+    }
+
+    /**
+     * Skip over bytes, which must all be there.
+     *
+     * @param length
+     * @throws IOException
+     */
+    public void skipFully(int length) throws IOException
+    {
+        if (this.skipBytes(length) != length)
+        {
+            throw new EOFException();
+        }
+    }
+
+    /**
+     * The array being read, giving access to the position.
+     */
+    private static class Buffer extends ByteArrayInputStream
+    {
+        /**
+         * Constructor
+         *
+         * @param data
+         * @param offset
+         * @param length
+         */
+        private Buffer(byte[] data, int offset, int length)
+        {
+            super(data, offset, length);
+        }
+
+        /**
+         * Return the array being read.
+         */
+        private byte[] getData()
+        {
+            return this.buf;
+        }
+
+        /**
+         * Return the offset in the array of the next byte to be read.
+         */
+        private int getPosition()
+        {
+            return this.pos;
+        }
+    }
+}
@@ -37,27 +37,6 @@ public class ClassFile implements ClassConstants
     // Constants -------------------------------------------------------------
     public static final String SEP_REGULAR = "/";
     public static final String SEP_INNER = "$";
-    private static final String CLASS_FORNAME_NAME_DESCRIPTOR = "forName(Ljava/lang/String;)Ljava/lang/Class;";
-    private static final String[] DANGEROUS_CLASS_SIMPLENAME_DESCRIPTOR_ARRAY =
-    {
-        "getDeclaredField(Ljava/lang/String;)Ljava/lang/reflect/Field;",
-        "getField(Ljava/lang/String;)Ljava/lang/reflect/Field;",
-        "getDeclaredMethod(Ljava/lang/String;[Ljava/lang/Class;)Ljava/lang/reflect/Method;",
-        "getMethod(Ljava/lang/String;[Ljava/lang/Class;)Ljava/lang/reflect/Method;"
-    };
-    private static final String LOG_DANGER_CLASS_PRE = "     Your class ";
-    private static final String LOG_DANGER_CLASS_MID = " calls the java/lang/Class method ";
-    private static final String LOG_CLASS_FORNAME_MID = " uses '.class' or calls java/lang/Class.";
-    private static final String[] DANGEROUS_CLASSLOADER_SIMPLENAME_DESCRIPTOR_ARRAY =
-    {
-        "defineClass(Ljava/lang/String;[BII)Ljava/lang/Class;",
-        "findLoadedClass(Ljava/lang/String;)Ljava/lang/Class;",
-        "findSystemClass(Ljava/lang/String;)Ljava/lang/Class;",
-        "loadClass(Ljava/lang/String;)Ljava/lang/Class;",
-        "loadClass(Ljava/lang/String;Z)Ljava/lang/Class;"
-    };
-    private static final String LOG_DANGER_CLASSLOADER_PRE = "     Your class ";
-    private static final String LOG_DANGER_CLASSLOADER_MID = " calls the java/lang/ClassLoader method ";
 
 
     // Fields ----------------------------------------------------------------
@@ -493,58 +472,6 @@ public class ClassFile implements ClassConstants
         throw new ClassFileException("Not UTF8Info");
     }
 
-    /**
-     * List methods which can break obfuscated code, and log to a {@code List<String>}.
-     *
-     * @param list
-     */
-    public List<String> listDangerMethods(List<String> list)
-    {
-        // Need only check CONSTANT_Methodref entries of constant pool since dangerous methods belong to classes 'Class' and
-        // 'ClassLoader', not to interfaces.
-        for (CpInfo cpInfo : this.constantPool)
-        {
-            if (cpInfo instanceof MethodrefCpInfo)
-            {
-                try
-                {
-                    // Get the method class name, simple name and descriptor
-                    MethodrefCpInfo entry = (MethodrefCpInfo)cpInfo;
-                    ClassCpInfo classEntry = (ClassCpInfo)this.getCpEntry(entry.getClassIndex());
-                    String className = this.getUtf8(classEntry.getNameIndex());
-                    NameAndTypeCpInfo ntEntry = (NameAndTypeCpInfo)this.getCpEntry(entry.getNameAndTypeIndex());
-                    String name = this.getUtf8(ntEntry.getNameIndex());
-                    String descriptor = this.getUtf8(ntEntry.getDescriptorIndex());
-
-                    // Check if this is on the proscribed list
-                    if (className.equals("java/lang/Class"))
-                    {
-                        if (ClassFile.CLASS_FORNAME_NAME_DESCRIPTOR.equals(name + descriptor))
-                        {
-                            list.add(ClassFile.LOG_DANGER_CLASS_PRE + this.getName() + ClassFile.LOG_CLASS_FORNAME_MID
-                                + ClassFile.CLASS_FORNAME_NAME_DESCRIPTOR);
-                        }
-                        else if (Arrays.asList(ClassFile.DANGEROUS_CLASS_SIMPLENAME_DESCRIPTOR_ARRAY).contains(name + descriptor))
-                        {
-                            list.add(ClassFile.LOG_DANGER_CLASS_PRE + this.getName() + ClassFile.LOG_DANGER_CLASS_MID
-                                + name + descriptor);
-                        }
-                    }
-                    else if (Arrays.asList(ClassFile.DANGEROUS_CLASSLOADER_SIMPLENAME_DESCRIPTOR_ARRAY).contains(name + descriptor))
-                    {
-                        list.add(ClassFile.LOG_DANGER_CLASSLOADER_PRE + this.getName() + ClassFile.LOG_DANGER_CLASSLOADER_MID
-                            + name + descriptor);
-                    }
-                }
-                catch (ClassFileException e)
-                {
-                    // ignore
-                }
-            }
-        }
-        return list;
-    }
-
     /**
      * Check for direct references to Utf8 constant pool entries.
      *
@@ -899,7 +826,7 @@ public class ClassFile implements ClassConstants
      *
      * @param s
      */
-    private static boolean isClassSpec(String s)
+    static boolean isClassSpec(String s)
     {
         if (s.length() == 0)
         {
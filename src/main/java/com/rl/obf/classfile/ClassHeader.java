@@ -0,0 +1,808 @@
+/* ===========================================================================
+ * $RCSfile: ClassHeader.java,v $
+ * ===========================================================================
+ *
+ * RetroGuard -- an obfuscation package for Java classfiles.
+ *
+ * This program can be redistributed and/or modified under the terms of the
+ * Version 2 of the GNU General Public License as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+
+package com.rl.obf.classfile;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The parts of a class file that the class tree is built from: the class header, and the name, descriptor and access flags
+ * of each field and method. It is read straight from the class file data. Constant pool entries are only located, and
+ * strings are decoded when first asked for. Attribute bodies are skipped by their length. A class which remapping would leave
+ * as it is can be written straight back from the data.
+ */
+public class ClassHeader implements ClassConstants
+{
+    // Constants -------------------------------------------------------------
+    private static final String CLASS_FORNAME_NAME_DESCRIPTOR = "forName(Ljava/lang/String;)Ljava/lang/Class;";
+    private static final String[] DANGEROUS_CLASS_SIMPLENAME_DESCRIPTOR_ARRAY =
+    {
+        "getDeclaredField(Ljava/lang/String;)Ljava/lang/reflect/Field;",
+        "getField(Ljava/lang/String;)Ljava/lang/reflect/Field;",
+        "getDeclaredMethod(Ljava/lang/String;[Ljava/lang/Class;)Ljava/lang/reflect/Method;",
+        "getMethod(Ljava/lang/String;[Ljava/lang/Class;)Ljava/lang/reflect/Method;"
+    };
+    private static final String LOG_DANGER_CLASS_PRE = "     Your class ";
+    private static final String LOG_DANGER_CLASS_MID = " calls the java/lang/Class method ";
+    private static final String LOG_CLASS_FORNAME_MID = " uses '.class' or calls java/lang/Class.";
+    private static final String[] DANGEROUS_CLASSLOADER_SIMPLENAME_DESCRIPTOR_ARRAY =
+    {
+        "defineClass(Ljava/lang/String;[BII)Ljava/lang/Class;",
+        "findLoadedClass(Ljava/lang/String;)Ljava/lang/Class;",
+        "findSystemClass(Ljava/lang/String;)Ljava/lang/Class;",
+        "loadClass(Ljava/lang/String;)Ljava/lang/Class;",
+        "loadClass(Ljava/lang/String;Z)Ljava/lang/Class;"
+    };
+    private static final String LOG_DANGER_CLASSLOADER_PRE = "     Your class ";
+    private static final String LOG_DANGER_CLASSLOADER_MID = " calls the java/lang/ClassLoader method ";
+
+
+    // Fields ----------------------------------------------------------------
+    private byte[] data;
+
+    /**
+     * Read position while parsing
+     */
+    private int pos = 0;
+
+    private int u2majorVersion;
+
+    /**
+     * Offset of the tag of each constant pool entry, or 0 for the zero entry and those following a Long or Double
+     */
+    private int[] cpOffsets;
+
+    /**
+     * Utf8 constant pool entries decoded so far
+     */
+    private String[] cpStrings;
+
+    private int u2accessFlags;
+    private int u2thisClass;
+    private int u2superClass;
+    private int[] u2interfaces;
+    private List<Member> fields;
+    private List<Member> methods;
+
+    /**
+     * Offsets of the end of the constant pool, of the fields and of the end of the class file
+     */
+    private int cpEnd;
+    private int membersOffset;
+    private int end;
+
+
+    // Class Methods ---------------------------------------------------------
+    /**
+     * Read the header of a class file.
+     *
+     * @param data
+     * @throws IOException
+     * @throws ClassFileException
+     */
+    public static ClassHeader create(byte[] data) throws IOException, ClassFileException
+    {
+        if (data == null)
+        {
+            throw new IOException("No class file data was provided.");
+        }
+        ClassHeader ch = new ClassHeader(data);
+        ch.read();
+        return ch;
+    }
+
+
+    // Instance Methods ------------------------------------------------------
+    /**
+     * Private constructor.
+     *
+     * @param data
+     */
+    private ClassHeader(byte[] data)
+    {
+        this.data = data;
+    }
+
+    /**
+     * Locate the constant pool entries, and read the class header and the fields and methods, checking the class file as far
+     * as ClassFile would.
+     *
+     * @throws IOException
+     * @throws ClassFileException
+     */
+    private void read() throws IOException, ClassFileException
+    {
+        if (this.readInt() != ClassConstants.MAGIC)
+        {
+            throw new ClassFileException("Invalid magic number in class file.");
+        }
+        this.readUnsignedShort();
+        this.u2majorVersion = this.readUnsignedShort();
+
+        int u2constantPoolCount = this.readUnsignedShort();
+        this.cpOffsets = new int[u2constantPoolCount];
+        this.cpStrings = new String[u2constantPoolCount];
+        for (int i = 1; i < u2constantPoolCount; i++)
+        {
+            this.cpOffsets[i] = this.pos;
+            switch (this.readUnsignedByte())
+            {
+                case CONSTANT_Utf8:
+                    this.skip(this.readUnsignedShort());
+                    break;
+                case CONSTANT_Integer:
+                case CONSTANT_Float:
+                    this.skip(4);
+                    break;
+                case CONSTANT_Long:
+                case CONSTANT_Double:
+                    this.skip(8);
+                    i++;
+                    break;
+                case CONSTANT_Class:
+                case CONSTANT_String:
+                case CONSTANT_MethodType:
+                    this.skip(2);
+                    break;
+                case CONSTANT_MethodHandle:
+                    this.skip(3);
+                    break;
+                case CONSTANT_Fieldref:
+                case CONSTANT_Methodref:
+                case CONSTANT_InterfaceMethodref:
+                case CONSTANT_NameAndType:
+                case CONSTANT_InvokeDynamic:
+                    this.skip(4);
+                    break;
+                default:
+                    throw new ClassFileException("Unknown tag type in constant pool.");
+            }
+        }
+        this.cpEnd = this.pos;
+
+        this.u2accessFlags = this.readUnsignedShort();
+        this.u2thisClass = this.readUnsignedShort();
+        this.u2superClass = this.readUnsignedShort();
+        int u2interfacesCount = this.readUnsignedShort();
+        this.u2interfaces = new int[u2interfacesCount];
+        for (int i = 0; i < u2interfacesCount; i++)
+        {
+            this.u2interfaces[i] = this.readUnsignedShort();
+        }
+        this.membersOffset = this.pos;
+        this.fields = this.readMembers();
+        this.methods = this.readMembers();
+        this.skipAttributes();
+        this.end = this.pos;
+    }
+
+    /**
+     * Read a list of fields or methods.
+     *
+     * @throws IOException
+     * @throws ClassFileException
+     */
+    private List<Member> readMembers() throws IOException, ClassFileException
+    {
+        int count = this.readUnsignedShort();
+        List<Member> members = new ArrayList<Member>(count);
+        for (int i = 0; i < count; i++)
+        {
+            Member member = new Member();
+            member.u2accessFlags = this.readUnsignedShort();
+            member.u2nameIndex = this.readUnsignedShort();
+            member.u2descriptorIndex = this.readUnsignedShort();
+            member.isSynthetic = this.skipAttributes();
+            members.add(member);
+        }
+        return members;
+    }
+
+    /**
+     * Skip a list of attributes, and return whether one was 'Synthetic'.
+     *
+     * @throws IOException
+     * @throws ClassFileException
+     */
+    private boolean skipAttributes() throws IOException, ClassFileException
+    {
+        boolean isSynthetic = false;
+        int count = this.readUnsignedShort();
+        for (int i = 0; i < count; i++)
+        {
+            String attrName = this.getUtf8(this.readUnsignedShort());
+            this.skip(this.readInt());
+            if (attrName.equals(ClassConstants.ATTR_Synthetic))
+            {
+                isSynthetic = true;
+            }
+        }
+        return isSynthetic;
+    }
+
+    private int readUnsignedByte() throws EOFException
+    {
+        this.skip(1);
+        return this.data[this.pos - 1] & 0xFF;
+    }
+
+    private int readUnsignedShort() throws EOFException
+    {
+        this.skip(2);
+        return this.getUnsignedShort(this.pos - 2);
+    }
+
+    private int readInt() throws EOFException
+    {
+        this.skip(4);
+        return (this.getUnsignedShort(this.pos - 4) << 16) | this.getUnsignedShort(this.pos - 2);
+    }
+
+    private int getUnsignedShort(int offset)
+    {
+        return ((this.data[offset] & 0xFF) << 8) | (this.data[offset + 1] & 0xFF);
+    }
+
+    /**
+     * Move the read position on.
+     *
+     * @param length
+     * @throws EOFException
+     */
+    private void skip(int length) throws EOFException
+    {
+        if ((length < 0) || (length > this.data.length - this.pos))
+        {
+            throw new EOFException();
+        }
+        this.pos += length;
+    }
+
+    /**
+     * Return the offset of a constant pool entry, checking its tag.
+     *
+     * @param cpIndex
+     * @param tag
+     * @param message
+     * @throws ClassFileException
+     */
+    private int getCpOffset(int cpIndex, int tag, String message) throws ClassFileException
+    {
+        if ((cpIndex < 0) || (cpIndex >= this.cpOffsets.length))
+        {
+            throw new ClassFileException("Constant Pool index out of range.");
+        }
+        int offset = this.cpOffsets[cpIndex];
+        if ((offset == 0) || ((this.data[offset] & 0xFF) != tag))
+        {
+            throw new ClassFileException(message);
+        }
+        return offset;
+    }
+
+    /**
+     * Return the string of a Utf8 constant pool entry.
+     *
+     * @param cpIndex
+     * @throws ClassFileException
+     */
+    private String getUtf8(int cpIndex) throws ClassFileException
+    {
+        int offset = this.getCpOffset(cpIndex, ClassConstants.CONSTANT_Utf8, "Not UTF8Info");
+        String string = this.cpStrings[cpIndex];
+        if (string == null)
+        {
+            try
+            {
+                string = new String(this.data, offset + 3, this.getUnsignedShort(offset + 1), "UTF8");
+            }
+            catch (UnsupportedEncodingException e)
+            {
+                throw new RuntimeException(e);
+            }
+            this.cpStrings[cpIndex] = string;
+        }
+        return string;
+    }
+
+    /**
+     * Return the name of a Class constant pool entry.
+     *
+     * @param cpIndex
+     * @throws ClassFileException
+     */
+    private String toName(int cpIndex) throws ClassFileException
+    {
+        int offset = this.getCpOffset(cpIndex, ClassConstants.CONSTANT_Class, "Inconsistent Constant Pool in class file.");
+        return this.getUtf8(this.getUnsignedShort(offset + 1));
+    }
+
+    /**
+     * Is this class in an unsupported version of the file format?
+     */
+    public boolean hasIncompatibleVersion()
+    {
+        return (this.u2majorVersion > ClassConstants.MAJOR_VERSION);
+    }
+
+    /**
+     * Return major version of this class's file format.
+     */
+    public int getMajorVersion()
+    {
+        return this.u2majorVersion;
+    }
+
+    /**
+     * Return the access modifiers for this class.
+     */
+    public int getModifiers()
+    {
+        return this.u2accessFlags;
+    }
+
+    /**
+     * Return the name of this class.
+     *
+     * @throws ClassFileException
+     */
+    public String getName() throws ClassFileException
+    {
+        return this.toName(this.u2thisClass);
+    }
+
+    /**
+     * Return the name of this class's superclass.
+     *
+     * @throws ClassFileException
+     */
+    public String getSuper() throws ClassFileException
+    {
+        // This may be java/lang/Object, in which case there is no super
+        if (this.u2superClass == 0)
+        {
+            return null;
+        }
+
+        return this.toName(this.u2superClass);
+    }
+
+    /**
+     * Return the names of this class's interfaces.
+     *
+     * @throws ClassFileException
+     */
+    public List<String> getInterfaces() throws ClassFileException
+    {
+        List<String> interfaces = new ArrayList<String>(this.u2interfaces.length);
+        for (int intf : this.u2interfaces)
+        {
+            interfaces.add(this.toName(intf));
+        }
+        return interfaces;
+    }
+
+    /**
+     * Return all methods in class.
+     */
+    public List<Member> getMethods()
+    {
+        return this.methods;
+    }
+
+    /**
+     * Return all fields in class.
+     */
+    public List<Member> getFields()
+    {
+        return this.fields;
+    }
+
+    /**
+     * List methods which can break obfuscated code, and log to a {@code List<String>}.
+     *
+     * @param list
+     */
+    public List<String> listDangerMethods(List<String> list)
+    {
+        // Need only check CONSTANT_Methodref entries of constant pool since dangerous methods belong to classes 'Class' and
+        // 'ClassLoader', not to interfaces.
+        for (int offset : this.cpOffsets)
+        {
+            if ((offset != 0) && ((this.data[offset] & 0xFF) == ClassConstants.CONSTANT_Methodref))
+            {
+                try
+                {
+                    // Get the method class name, simple name and descriptor
+                    String className = this.toName(this.getUnsignedShort(offset + 1));
+                    int ntOffset = this.getCpOffset(this.getUnsignedShort(offset + 3), ClassConstants.CONSTANT_NameAndType,
+                        "Inconsistent Constant Pool in class file.");
+                    String name = this.getUtf8(this.getUnsignedShort(ntOffset + 1));
+                    String descriptor = this.getUtf8(this.getUnsignedShort(ntOffset + 3));
+
+                    // Check if this is on the proscribed list
+                    if (className.equals("java/lang/Class"))
+                    {
+                        if (ClassHeader.CLASS_FORNAME_NAME_DESCRIPTOR.equals(name + descriptor))
+                        {
+                            list.add(ClassHeader.LOG_DANGER_CLASS_PRE + this.getName() + ClassHeader.LOG_CLASS_FORNAME_MID
+                                + ClassHeader.CLASS_FORNAME_NAME_DESCRIPTOR);
+                        }
+                        else if (Arrays.asList(ClassHeader.DANGEROUS_CLASS_SIMPLENAME_DESCRIPTOR_ARRAY).contains(name + descriptor))
+                        {
+                            list.add(ClassHeader.LOG_DANGER_CLASS_PRE + this.getName() + ClassHeader.LOG_DANGER_CLASS_MID
+                                + name + descriptor);
+                        }
+                    }
+                    else if (Arrays.asList(ClassHeader.DANGEROUS_CLASSLOADER_SIMPLENAME_DESCRIPTOR_ARRAY).contains(name + descriptor))
+                    {
+                        list.add(ClassHeader.LOG_DANGER_CLASSLOADER_PRE + this.getName() + ClassHeader.LOG_DANGER_CLASSLOADER_MID
+                            + name + descriptor);
+                    }
+                }
+                catch (ClassFileException e)
+                {
+                    // ignore
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Would remapping leave this class file as it is, apart from the class ID string? This holds when the name mapper maps
+     * every class, field, method and descriptor named in the class to itself, no attribute is trimmed, and writing the constant
+     * pool back would not blank, merge or re-encode any Utf8 entry. Classes with attributes which need looking inside to be
+     * remapped, other than 'Code', 'InnerClasses', 'LocalVariableTable' and 'SourceFile', are left to ClassFile.
+     *
+     * @param nm
+     * @param enableMapClassString
+     * @throws IOException
+     * @throws ClassFileException
+     */
+    public boolean isUnchanged(NameMapper nm, boolean enableMapClassString) throws IOException, ClassFileException
+    {
+        List<String> keepAttrs = new ArrayList<String>(Arrays.asList(ClassConstants.REQUIRED_ATTRS));
+        keepAttrs.addAll(nm.getAttrsToKeep());
+        boolean[] utf8Refs = new boolean[this.cpOffsets.length];
+        Set<String> strings = new HashSet<String>();
+
+        // Check the constant pool entries, as ClassFile.remap would map them
+        for (int i = 1; i < this.cpOffsets.length; i++)
+        {
+            int offset = this.cpOffsets[i];
+            if (offset == 0)
+            {
+                continue;
+            }
+            switch (this.data[offset] & 0xFF)
+            {
+                case CONSTANT_Utf8:
+                    if (!strings.add(this.getUtf8(i)) || !this.isReencoded(i))
+                    {
+                        return false;
+                    }
+                    break;
+                case CONSTANT_Class:
+                {
+                    String className = this.markUtf8(this.getUnsignedShort(offset + 1), utf8Refs);
+                    if (!nm.mapClass(className).equals(className))
+                    {
+                        return false;
+                    }
+                    break;
+                }
+                case CONSTANT_String:
+                {
+                    String name = ClassFile.backTranslate(this.markUtf8(this.getUnsignedShort(offset + 1), utf8Refs));
+                    if (enableMapClassString && ClassFile.isClassSpec(name) && !nm.mapClass(name).equals(name))
+                    {
+                        return false;
+                    }
+                    break;
+                }
+                case CONSTANT_NameAndType:
+                    this.markUtf8(this.getUnsignedShort(offset + 1), utf8Refs);
+                    this.markUtf8(this.getUnsignedShort(offset + 3), utf8Refs);
+                    break;
+                case CONSTANT_MethodType:
+                    this.markUtf8(this.getUnsignedShort(offset + 1), utf8Refs);
+                    break;
+                case CONSTANT_Fieldref:
+                case CONSTANT_Methodref:
+                case CONSTANT_InterfaceMethodref:
+                {
+                    String className = this.toName(this.getUnsignedShort(offset + 1));
+                    int ntOffset = this.getCpOffset(this.getUnsignedShort(offset + 3), ClassConstants.CONSTANT_NameAndType,
+                        "Inconsistent Constant Pool in class file.");
+                    String ref = this.getUtf8(this.getUnsignedShort(ntOffset + 1));
+                    String desc = this.getUtf8(this.getUnsignedShort(ntOffset + 3));
+                    String remapRef;
+                    if ((this.data[offset] & 0xFF) == ClassConstants.CONSTANT_Fieldref)
+                    {
+                        remapRef = nm.mapField(className, ref);
+                    }
+                    else
+                    {
+                        remapRef = nm.mapMethod(className, ref, desc);
+                    }
+                    if (!remapRef.equals(ref) || !nm.mapDescriptor(desc).equals(desc))
+                    {
+                        return false;
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+
+        // Check the fields, methods and attributes
+        String thisClassName = this.getName();
+        this.pos = this.membersOffset;
+        for (int pass = 0; pass < 2; pass++)
+        {
+            List<Member> members = (pass == 0 ? this.fields : this.methods);
+            this.readUnsignedShort();
+            for (Member member : members)
+            {
+                this.skip(6);
+                String name = this.markUtf8(member.u2nameIndex, utf8Refs);
+                String desc = this.markUtf8(member.u2descriptorIndex, utf8Refs);
+                if (!member.isSynthetic())
+                {
+                    String remapName = (pass == 0 ? nm.mapField(thisClassName, name) : nm.mapMethod(thisClassName, name, desc));
+                    if (!remapName.equals(name))
+                    {
+                        return false;
+                    }
+                }
+                if (!nm.mapDescriptor(desc).equals(desc) || !this.isAttributesUnchanged(nm, keepAttrs, utf8Refs))
+                {
+                    return false;
+                }
+            }
+        }
+        if (!this.isAttributesUnchanged(nm, keepAttrs, utf8Refs))
+        {
+            return false;
+        }
+
+        // Utf8 entries that nothing refers to would be blanked
+        for (int i = 1; i < this.cpOffsets.length; i++)
+        {
+            int offset = this.cpOffsets[i];
+            if ((offset != 0) && ((this.data[offset] & 0xFF) == ClassConstants.CONSTANT_Utf8) && !utf8Refs[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check a list of attributes for isUnchanged.
+     *
+     * @param nm
+     * @param keepAttrs
+     * @param utf8Refs
+     * @throws IOException
+     * @throws ClassFileException
+     */
+    private boolean isAttributesUnchanged(NameMapper nm, List<String> keepAttrs, boolean[] utf8Refs)
+        throws IOException, ClassFileException
+    {
+        int count = this.readUnsignedShort();
+        for (int i = 0; i < count; i++)
+        {
+            String attrName = this.markUtf8(this.readUnsignedShort(), utf8Refs);
+            int length = this.readInt();
+            int start = this.pos;
+            if (!keepAttrs.contains(attrName))
+            {
+                return false;
+            }
+            if (attrName.equals(ClassConstants.ATTR_Code))
+            {
+                this.skip(4);
+                this.skip(this.readInt());
+                this.skip(this.readUnsignedShort() * 8);
+                if (!this.isAttributesUnchanged(nm, keepAttrs, utf8Refs))
+                {
+                    return false;
+                }
+            }
+            else if (attrName.equals(ClassConstants.ATTR_InnerClasses))
+            {
+                int classes = this.readUnsignedShort();
+                for (int j = 0; j < classes; j++)
+                {
+                    int innerClassIndex = this.readUnsignedShort();
+                    this.skip(2);
+                    int innerNameIndex = this.readUnsignedShort();
+                    this.skip(2);
+                    if (innerNameIndex != 0)
+                    {
+                        // It is the remapped simple name that is stored
+                        String innerName = this.markUtf8(innerNameIndex, utf8Refs);
+                        String remapClass = nm.mapClass(this.toName(innerClassIndex));
+                        if (!remapClass.substring(remapClass.lastIndexOf('$') + 1).equals(innerName))
+                        {
+                            return false;
+                        }
+                    }
+                }
+            }
+            else if (attrName.equals(ClassConstants.ATTR_LocalVariableTable))
+            {
+                int localVariables = this.readUnsignedShort();
+                for (int j = 0; j < localVariables; j++)
+                {
+                    this.skip(4);
+                    this.markUtf8(this.readUnsignedShort(), utf8Refs);
+                    String desc = this.markUtf8(this.readUnsignedShort(), utf8Refs);
+                    this.skip(2);
+                    if (!nm.mapDescriptor(desc).equals(desc))
+                    {
+                        return false;
+                    }
+                }
+            }
+            else if (attrName.equals(ClassConstants.ATTR_SourceFile))
+            {
+                this.markUtf8(this.readUnsignedShort(), utf8Refs);
+            }
+            else if (attrName.equals(ClassConstants.ATTR_ConstantValue) || attrName.equals(ClassConstants.ATTR_Exceptions)
+                || attrName.equals(ClassConstants.ATTR_LineNumberTable) || attrName.equals(ClassConstants.ATTR_Synthetic)
+                || attrName.equals(ClassConstants.ATTR_Deprecated) || attrName.equals(ClassConstants.ATTR_EnclosingMethod)
+                || attrName.equals(ClassConstants.ATTR_StackMapTable) || attrName.equals(ClassConstants.ATTR_BootstrapMethods))
+            {
+                // Copied through without being looked inside
+                this.skip(length);
+            }
+            else
+            {
+                return false;
+            }
+
+            // ClassFile writes the length of the data it decoded, rather than the length it read
+            if (this.pos != start + length)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the string of a Utf8 constant pool entry, and note that it is referred to.
+     *
+     * @param cpIndex
+     * @param utf8Refs
+     * @throws ClassFileException
+     */
+    private String markUtf8(int cpIndex, boolean[] utf8Refs) throws ClassFileException
+    {
+        String string = this.getUtf8(cpIndex);
+        utf8Refs[cpIndex] = true;
+        return string;
+    }
+
+    /**
+     * Would a Utf8 constant pool entry be written back as the same bytes, if its string were set again?
+     *
+     * @param cpIndex
+     * @throws ClassFileException
+     */
+    private boolean isReencoded(int cpIndex) throws ClassFileException
+    {
+        int offset = this.cpOffsets[cpIndex];
+        int length = this.getUnsignedShort(offset + 1);
+        for (int i = offset + 3; i < offset + 3 + length; i++)
+        {
+            if (this.data[i] < 0)
+            {
+                try
+                {
+                    byte[] bytes = this.getUtf8(cpIndex).getBytes("UTF8");
+                    return Arrays.equals(bytes, Arrays.copyOfRange(this.data, offset + 3, offset + 3 + length));
+                }
+                catch (UnsupportedEncodingException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write the class file as it was read, with a constant String added to the end of the constant pool as ClassFile would.
+     *
+     * @param dout
+     * @param id
+     * @throws IOException
+     */
+    public void write(DataOutput dout, String id) throws IOException
+    {
+        if (dout == null)
+        {
+            throw new IOException("No output stream was provided.");
+        }
+        dout.write(this.data, 0, 8);
+        if (id == null)
+        {
+            dout.write(this.data, 8, this.end - 8);
+            return;
+        }
+        dout.writeShort(this.cpOffsets.length + 1);
+        dout.write(this.data, 10, this.cpEnd - 10);
+        byte[] bytes = id.getBytes("UTF8");
+        dout.writeByte(ClassConstants.CONSTANT_Utf8);
+        dout.writeShort(bytes.length);
+        dout.write(bytes);
+        dout.write(this.data, this.cpEnd, this.end - this.cpEnd);
+    }
+
+    /**
+     * A field or method of the class.
+     */
+    public class Member
+    {
+        private int u2accessFlags;
+        private int u2nameIndex;
+        private int u2descriptorIndex;
+        private boolean isSynthetic;
+
+        /**
+         * Is the field or method 'Synthetic'?
+         */
+        public boolean isSynthetic()
+        {
+            return this.isSynthetic;
+        }
+
+        /**
+         * Return access flags.
+         */
+        public int getAccessFlags()
+        {
+            return this.u2accessFlags;
+        }
+
+        /**
+         * Return method/field string name.
+         *
+         * @throws ClassFileException
+         */
+        public String getName() throws ClassFileException
+        {
+            return ClassHeader.this.getUtf8(this.u2nameIndex);
+        }
+
+        /**
+         * Return descriptor string.
+         *
+         * @throws ClassFileException
+         */
+        public String getDescriptor() throws ClassFileException
+        {
+            return ClassHeader.this.getUtf8(this.u2descriptorIndex);
+        }
+    }
+}
@@ -35,13 +35,34 @@ public class CodeAttrInfo extends AttrInfo
     @SuppressWarnings("hiding")
     public static final int CONSTANT_FIELD_SIZE = 12;
 
+    /**
+     * Size of an exception table entry
+     */
+    private static final int EXCEPTION_INFO_SIZE = 8;
+
 
     // Fields ----------------------------------------------------------------
     private int u2maxStack;
     private int u2maxLocals;
     private int u4codeLength;
     private byte[] code;
-    private List<ExceptionInfo> exceptionTable;
+
+    /**
+     * Offset of the code in the code array, which is the class file data itself when that was read from a ClassDataInput
+     */
+    private int codeOffset;
+
+    /**
+     * Is the code array shared with the class file data, so must be copied before the code is changed?
+     */
+    private boolean codeShared = false;
+
+    /**
+     * Undecoded exception table entries, and their offset in the array
+     */
+    private int u2exceptionTableLength;
+    private byte[] exceptionTable;
+    private int exceptionTableOffset;
     protected List<AttrInfo> attributes;
 
 
@@ -140,7 +161,7 @@ public class CodeAttrInfo extends AttrInfo
     protected int getAttrInfoLength()
     {
         int length = CodeAttrInfo.CONSTANT_FIELD_SIZE + this.u4codeLength
-            + (this.exceptionTable.size() * ExceptionInfo.CONSTANT_FIELD_SIZE);
+            + (this.u2exceptionTableLength * CodeAttrInfo.EXCEPTION_INFO_SIZE);
         for (AttrInfo at : this.attributes)
         {
             length += AttrInfo.CONSTANT_FIELD_SIZE + at.getAttrInfoLength();
@@ -157,6 +178,15 @@ public class CodeAttrInfo extends AttrInfo
         return ClassConstants.ATTR_Code;
     }
 
+    /**
+     * The 'info' data holds the attributes of the method body, so must be decoded.
+     */
+    @Override
+    protected boolean hasUtf8RefsInInfo()
+    {
+        return true;
+    }
+
     /**
      * Trim attributes from the classfile ('Code', 'Exceptions', 'ConstantValue' are preserved, all others except those in the
      * {@code List<String>} are killed).
@@ -207,13 +237,26 @@ public class CodeAttrInfo extends AttrInfo
         this.u2maxStack = din.readUnsignedShort();
         this.u2maxLocals = din.readUnsignedShort();
         this.u4codeLength = din.readInt();
-        this.code = new byte[this.u4codeLength];
-        din.readFully(this.code);
-        int u2exceptionTableLength = din.readUnsignedShort();
-        this.exceptionTable = new ArrayList<ExceptionInfo>(u2exceptionTableLength);
-        for (int i = 0; i < u2exceptionTableLength; i++)
+        if (din instanceof ClassDataInput)
         {
-            this.exceptionTable.add(ExceptionInfo.create(din));
+            // Keep the code and exception table as ranges of the class file data, to be written back from there
+            ClassDataInput cdin = (ClassDataInput)din;
+            this.code = cdin.getData();
+            this.codeOffset = cdin.getPosition();
+            this.codeShared = true;
+            cdin.skipFully(this.u4codeLength);
+            this.u2exceptionTableLength = cdin.readUnsignedShort();
+            this.exceptionTable = cdin.getData();
+            this.exceptionTableOffset = cdin.getPosition();
+            cdin.skipFully(this.u2exceptionTableLength * CodeAttrInfo.EXCEPTION_INFO_SIZE);
+        }
+        else
+        {
+            this.code = new byte[this.u4codeLength];
+            din.readFully(this.code);
+            this.u2exceptionTableLength = din.readUnsignedShort();
+            this.exceptionTable = new byte[this.u2exceptionTableLength * CodeAttrInfo.EXCEPTION_INFO_SIZE];
+            din.readFully(this.exceptionTable);
         }
         int u2attributesCount = din.readUnsignedShort();
         this.attributes = new ArrayList<AttrInfo>(u2attributesCount);
@@ -235,12 +278,10 @@ public class CodeAttrInfo extends AttrInfo
         dout.writeShort(this.u2maxStack);
         dout.writeShort(this.u2maxLocals);
         dout.writeInt(this.u4codeLength);
-        dout.write(this.code);
-        dout.writeShort(this.exceptionTable.size());
-        for (ExceptionInfo ex : this.exceptionTable)
-        {
-            ex.write(dout);
-        }
+        dout.write(this.code, this.codeOffset, this.u4codeLength);
+        dout.writeShort(this.u2exceptionTableLength);
+        dout.write(this.exceptionTable, this.exceptionTableOffset,
+            this.u2exceptionTableLength * CodeAttrInfo.EXCEPTION_INFO_SIZE);
         dout.writeShort(this.attributes.size());
         for (AttrInfo at : this.attributes)
         {
@@ -249,12 +290,12 @@ public class CodeAttrInfo extends AttrInfo
     }
 
     /**
-     * Do necessary name remapping.
+     * Do necessary name remapping in the 'info' data.
      * 
      * @throws ClassFileException
      */
     @Override
-    protected void remap(ClassFile cf, NameMapper nm) throws ClassFileException
+    protected void remapInfo(ClassFile cf, NameMapper nm) throws ClassFileException
     {
         for (AttrInfo at : this.attributes)
         {
@@ -298,21 +339,21 @@ public class CodeAttrInfo extends AttrInfo
     {
         int opcodePrev = -1;
         int ldcIndex = -1;
-        for (int i = 0; i < this.code.length; i++)
+        for (int i = 0; i < this.u4codeLength; i++)
         {
-            int opcode = this.code[i] & 0xFF;
-            if ((opcode == 0x12) && ((i + 1) < this.code.length)) // ldc
+            int opcode = this.getCodeByte(i);
+            if ((opcode == 0x12) && ((i + 1) < this.u4codeLength)) // ldc
             {
-                ldcIndex = this.code[i + 1] & 0xFF;
+                ldcIndex = this.getCodeByte(i + 1);
                 CpInfo ldcCpInfo = this.cf.getCpEntry(ldcIndex);
                 if (!(ldcCpInfo instanceof StringCpInfo))
                 {
                     ldcIndex = -1;
                 }
             }
-            else if ((opcode == 0x13) && ((i + 2) < this.code.length)) // ldc_w
+            else if ((opcode == 0x13) && ((i + 2) < this.u4codeLength)) // ldc_w
             {
-                ldcIndex = ((this.code[i + 1] & 0xFF) << 8) + (this.code[i + 2] & 0xFF);
+                ldcIndex = this.getCodeShort(i + 1);
                 CpInfo ldcCpInfo = this.cf.getCpEntry(ldcIndex);
                 if (!(ldcCpInfo instanceof StringCpInfo))
                 {
@@ -322,9 +363,9 @@ public class CodeAttrInfo extends AttrInfo
             if (((opcodePrev == 0x12) || (opcodePrev == 0x13)) && (ldcIndex != -1)) // ldc or ldc_w and is a StringCpInfo
             {
                 boolean isClassForName = false;
-                if ((opcode == 0xB8) && ((i + 2) < this.code.length)) // invokestatic
+                if ((opcode == 0xB8) && ((i + 2) < this.u4codeLength)) // invokestatic
                 {
-                    int invokeIndex = ((this.code[i + 1] & 0xFF) << 8) + (this.code[i + 2] & 0xFF);
+                    int invokeIndex = this.getCodeShort(i + 1);
                     CpInfo cpInfo = this.cf.getCpEntry(invokeIndex);
                     if (cpInfo instanceof MethodrefCpInfo)
                     {
@@ -346,13 +387,14 @@ public class CodeAttrInfo extends AttrInfo
                             {
                                 Integer oi = (Integer)o;
                                 int remapStringIndex = oi.intValue();
+                                this.unshareCode();
                                 switch (opcodePrev)
                                 {
                                     case 0x13: // ldc_w
-                                        this.code[i - 2] = 0;
+                                        this.code[this.codeOffset + i - 2] = 0;
                                         //$FALL-THROUGH$
                                     case 0x12: // ldc
-                                        this.code[i - 1] = (byte)remapStringIndex;
+                                        this.code[this.codeOffset + i - 1] = (byte)remapStringIndex;
                                         break;
                                     default: // error
                                         throw new RuntimeException("Internal error: "
@@ -374,6 +416,56 @@ public class CodeAttrInfo extends AttrInfo
         return cpToFlag;
     }
 
+    /**
+     * Return an unsigned byte of the code.
+     * 
+     * @param i
+     * @throws ClassFileException
+     */
+    private int getCodeByte(int i) throws ClassFileException
+    {
+        if ((i < 0) || (i >= this.u4codeLength))
+        {
+            throw new ClassFileException("Code index out of range.");
+        }
+        return this.code[this.codeOffset + i] & 0xFF;
+    }
+
+    /**
+     * Return an unsigned 2-byte value from the code.
+     * 
+     * @param i
+     * @throws ClassFileException
+     */
+    private int getCodeShort(int i) throws ClassFileException
+    {
+        return (this.getCodeByte(i) << 8) + this.getCodeByte(i + 1);
+    }
+
+    /**
+     * Return a 4-byte value from the code.
+     * 
+     * @param i
+     * @throws ClassFileException
+     */
+    private int getCodeInt(int i) throws ClassFileException
+    {
+        return (this.getCodeShort(i) << 16) + this.getCodeShort(i + 2);
+    }
+
+    /**
+     * Copy the code out of the class file data, so it can be changed.
+     */
+    private void unshareCode()
+    {
+        if (this.codeShared)
+        {
+            this.code = Arrays.copyOfRange(this.code, this.codeOffset, this.codeOffset + this.u4codeLength);
+            this.codeOffset = 0;
+            this.codeShared = false;
+        }
+    }
+
     /**
      * Compute length of opcode arguments at offset
      * 
@@ -391,11 +483,9 @@ public class CodeAttrInfo extends AttrInfo
                 case 0xAA: // tableswitch
                     bytes = 3 - (i % 4); // 0-3 byte pad
                     bytes += 4; // default value
-                    int low = ((this.code[i + 1 + bytes] & 0xFF) << 24) + ((this.code[i + 1 + bytes + 1] & 0xFF) << 16)
-                        + ((this.code[i + 1 + bytes + 2] & 0xFF) << 8) + (this.code[i + 1 + bytes + 3] & 0xFF);
+                    int low = this.getCodeInt(i + 1 + bytes);
                     bytes += 4; // low value
-                    int high = ((this.code[i + 1 + bytes] & 0xFF) << 24) + ((this.code[i + 1 + bytes + 1] & 0xFF) << 16)
-                        + ((this.code[i + 1 + bytes + 2] & 0xFF) << 8) + (this.code[i + 1 + bytes + 3] & 0xFF);
+                    int high = this.getCodeInt(i + 1 + bytes);
                     bytes += 4; // high value
                     if (high >= low)
                     {
@@ -405,8 +495,7 @@ public class CodeAttrInfo extends AttrInfo
                 case 0xAB: // lookupswitch
                     bytes = 3 - (i % 4); // 0-3 byte pad
                     bytes += 4; // default value
-                    int npairs = ((this.code[i + 1 + bytes] & 0xFF) << 24) + ((this.code[i + 1 + bytes + 1] & 0xFF) << 16)
-                        + ((this.code[i + 1 + bytes + 2] & 0xFF) << 8) + (this.code[i + 1 + bytes + 3] & 0xFF);
+                    int npairs = this.getCodeInt(i + 1 + bytes);
                     bytes += 4; // npairs value
                     if (npairs >= 0)
                     {
@@ -414,7 +503,7 @@ public class CodeAttrInfo extends AttrInfo
                     }
                     break;
                 case 0xC4: // wide
-                    int wideOpcode = this.code[i + 1] & 0xFF;
+                    int wideOpcode = this.getCodeByte(i + 1);
                     switch (wideOpcode)
                     {
                         case 0x15: // iload
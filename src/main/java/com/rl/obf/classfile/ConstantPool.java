@@ -39,6 +39,14 @@ public class ConstantPool implements Iterable<CpInfo>
     private ClassFile myClassFile;
     private List<CpInfo> pool;
 
+    /**
+     * Index of the lowest position of each non-empty Utf8 string, the strings found at more than one position, and the positions
+     * of unreferenced Utf8 entries; built when first needed by addUtf8Entry
+     */
+    private Map<String, Integer> utf8Index = null;
+    private Set<String> utf8Duplicates = null;
+    private SortedSet<Integer> utf8Free = null;
+
 
     // Class Methods ---------------------------------------------------------
 
@@ -98,6 +106,9 @@ public class ConstantPool implements Iterable<CpInfo>
      */
     public void updateRefCount() throws ClassFileException
     {
+        // Every reference count changes here, so drop the Utf8 index rather than update it
+        this.dropUtf8Index();
+
         // Reset all reference counts to zero
         this.walkPool(new PoolAction()
         {
@@ -189,6 +200,10 @@ public class ConstantPool implements Iterable<CpInfo>
         // Add new entry to end of pool
         int index = this.pool.size();
         this.pool.add(entry);
+        if ((this.utf8Index != null) && (entry instanceof Utf8CpInfo))
+        {
+            this.indexUtf8Entry((Utf8CpInfo)entry, index);
+        }
         return index;
     }
 
@@ -198,6 +213,47 @@ public class ConstantPool implements Iterable<CpInfo>
      * @param s
      */
     protected int addUtf8Entry(String s)
+    {
+        // Cleared entries are also empty strings, so look for an empty string the slow way
+        if (s.length() == 0)
+        {
+            return this.addUtf8EntryByScan(s);
+        }
+
+        if (this.utf8Index == null)
+        {
+            this.buildUtf8Index();
+        }
+
+        // Search pool for the string. If found, just increment the reference count and return the index
+        Integer found = this.utf8Index.get(s);
+        if (found != null)
+        {
+            int i = found.intValue();
+            this.pool.get(i).incRefCount();
+            return i;
+        }
+
+        // No luck, so try to overwrite an old, blanked entry
+        if (!this.utf8Free.isEmpty())
+        {
+            int i = this.utf8Free.first().intValue();
+            Utf8CpInfo entry = (Utf8CpInfo)this.pool.get(i);
+            entry.setString(s);
+            entry.incRefCount();
+            return i;
+        }
+
+        // Still no luck, so append a fresh Utf8CpInfo entry to the pool
+        return this.addEntry(new Utf8CpInfo(s));
+    }
+
+    /**
+     * Add a string to the constant pool by searching every entry, and return its index.
+     * 
+     * @param s
+     */
+    private int addUtf8EntryByScan(String s)
     {
         // Search pool for the string. If found, just increment the reference count and return the index
         for (ListIterator<CpInfo> iter = this.pool.listIterator(); iter.hasNext();)
@@ -236,6 +292,152 @@ public class ConstantPool implements Iterable<CpInfo>
         return this.addEntry(new Utf8CpInfo(s));
     }
 
+    /**
+     * Build the index of Utf8 strings and unreferenced Utf8 entries, and have the entries keep it up to date.
+     */
+    private void buildUtf8Index()
+    {
+        this.utf8Index = new HashMap<String, Integer>();
+        this.utf8Duplicates = new HashSet<String>();
+        this.utf8Free = new TreeSet<Integer>();
+        for (ListIterator<CpInfo> iter = this.pool.listIterator(); iter.hasNext();)
+        {
+            int i = iter.nextIndex();
+            CpInfo cpInfo = iter.next();
+            if (cpInfo instanceof Utf8CpInfo)
+            {
+                this.indexUtf8Entry((Utf8CpInfo)cpInfo, i);
+            }
+        }
+    }
+
+    /**
+     * Add a Utf8 entry to the index.
+     * 
+     * @param entry
+     * @param i
+     */
+    private void indexUtf8Entry(Utf8CpInfo entry, int i)
+    {
+        entry.setIndexingPool(this, i);
+        this.addToUtf8Index(entry.getString(), i);
+        if (entry.getRefCount() == 0)
+        {
+            this.utf8Free.add(Integer.valueOf(i));
+        }
+    }
+
+    /**
+     * Discard the index of Utf8 strings.
+     */
+    private void dropUtf8Index()
+    {
+        if (this.utf8Index != null)
+        {
+            for (CpInfo cpInfo : this.pool)
+            {
+                if (cpInfo instanceof Utf8CpInfo)
+                {
+                    ((Utf8CpInfo)cpInfo).setIndexingPool(null, 0);
+                }
+            }
+            this.utf8Index = null;
+            this.utf8Duplicates = null;
+            this.utf8Free = null;
+        }
+    }
+
+    /**
+     * Record that the string at a position is in the pool.
+     * 
+     * @param s
+     * @param i
+     */
+    private void addToUtf8Index(String s, int i)
+    {
+        if (s.length() == 0)
+        {
+            return;
+        }
+        Integer first = this.utf8Index.get(s);
+        if (first == null)
+        {
+            this.utf8Index.put(s, Integer.valueOf(i));
+        }
+        else
+        {
+            this.utf8Duplicates.add(s);
+            if (i < first.intValue())
+            {
+                this.utf8Index.put(s, Integer.valueOf(i));
+            }
+        }
+    }
+
+    /**
+     * Record that the string at a position is no longer in the pool.
+     * 
+     * @param s
+     * @param i
+     */
+    private void removeFromUtf8Index(String s, int i)
+    {
+        if (s.length() == 0)
+        {
+            return;
+        }
+        Integer first = this.utf8Index.get(s);
+        if ((first == null) || (first.intValue() != i))
+        {
+            return;
+        }
+        this.utf8Index.remove(s);
+        if (this.utf8Duplicates.remove(s))
+        {
+            // Find where else the string is, in the rare case it is in the pool more than once
+            for (ListIterator<CpInfo> iter = this.pool.listIterator(); iter.hasNext();)
+            {
+                int j = iter.nextIndex();
+                CpInfo cpInfo = iter.next();
+                if ((cpInfo instanceof Utf8CpInfo) && ((Utf8CpInfo)cpInfo).getString().equals(s))
+                {
+                    this.addToUtf8Index(s, j);
+                }
+            }
+        }
+    }
+
+    /**
+     * Called by an indexed Utf8 entry when its string changes.
+     * 
+     * @param i
+     * @param oldString
+     * @param newString
+     */
+    protected void utf8StringChanged(int i, String oldString, String newString)
+    {
+        this.removeFromUtf8Index(oldString, i);
+        this.addToUtf8Index(newString, i);
+    }
+
+    /**
+     * Called by an indexed Utf8 entry when its reference count becomes zero, or stops being zero.
+     * 
+     * @param i
+     * @param refCount
+     */
+    protected void utf8RefCountChanged(int i, int refCount)
+    {
+        if (refCount == 0)
+        {
+            this.utf8Free.add(Integer.valueOf(i));
+        }
+        else
+        {
+            this.utf8Free.remove(Integer.valueOf(i));
+        }
+    }
+
     /**
      * Data walker
      */
@@ -105,13 +105,13 @@ public class EnclosingMethodAttrInfo extends AttrInfo
     }
 
     /**
-     * Do necessary name remapping.
+     * Do necessary name remapping in the 'info' data.
      * 
      * @param cf
      * @param nm
      */
     @Override
-    protected void remap(ClassFile cf, NameMapper nm)
+    protected void remapInfo(ClassFile cf, NameMapper nm)
     {
         // No remap needed
     }
@@ -61,6 +61,15 @@ public class InnerClassesAttrInfo extends AttrInfo
         return ClassConstants.ATTR_InnerClasses;
     }
 
+    /**
+     * The 'info' data refers to Utf8 entries in the constant pool, so must be decoded.
+     */
+    @Override
+    protected boolean hasUtf8RefsInInfo()
+    {
+        return true;
+    }
+
     /**
      * Return the list of inner classes data.
      */
@@ -117,12 +126,12 @@ public class InnerClassesAttrInfo extends AttrInfo
     }
 
     /**
-     * Do necessary name remapping.
+     * Do necessary name remapping in the 'info' data.
      * 
      * @throws ClassFileException
      */
     @Override
-    protected void remap(ClassFile cf, NameMapper nm) throws ClassFileException
+    protected void remapInfo(ClassFile cf, NameMapper nm) throws ClassFileException
     {
         for (InnerClassesInfo cl : this.classes)
         {
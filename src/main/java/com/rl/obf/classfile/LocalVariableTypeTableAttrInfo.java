@@ -61,6 +61,15 @@ public class LocalVariableTypeTableAttrInfo extends AttrInfo
         return ClassConstants.ATTR_LocalVariableTypeTable;
     }
 
+    /**
+     * The 'info' data refers to Utf8 entries in the constant pool, so must be decoded.
+     */
+    @Override
+    protected boolean hasUtf8RefsInInfo()
+    {
+        return true;
+    }
+
     /**
      * Check for Utf8 references in the 'info' data to the constant pool and mark them.
      * 
@@ -109,12 +118,12 @@ public class LocalVariableTypeTableAttrInfo extends AttrInfo
     }
 
     /**
-     * Do necessary name remapping.
+     * Do necessary name remapping in the 'info' data.
      * 
      * @throws ClassFileException
      */
     @Override
-    protected void remap(ClassFile cf, NameMapper nm) throws ClassFileException
+    protected void remapInfo(ClassFile cf, NameMapper nm) throws ClassFileException
     {
         for (LocalVariableTypeInfo lvt : this.localVariableTypeTable)
         {
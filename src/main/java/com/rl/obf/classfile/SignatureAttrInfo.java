@@ -61,6 +61,15 @@ public class SignatureAttrInfo extends AttrInfo
         return ClassConstants.ATTR_Signature;
     }
 
+    /**
+     * The 'info' data refers to Utf8 entries in the constant pool, so must be decoded.
+     */
+    @Override
+    protected boolean hasUtf8RefsInInfo()
+    {
+        return true;
+    }
+
     /**
      * Check for Utf8 references in the 'info' data to the constant pool and mark them.
      *
@@ -97,12 +106,12 @@ public class SignatureAttrInfo extends AttrInfo
     }
 
     /**
-     * Do necessary name remapping.
+     * Do necessary name remapping in the 'info' data.
      *
      * @throws ClassFileException
      */
     @Override
-    protected void remap(ClassFile cf, NameMapper nm) throws ClassFileException
+    protected void remapInfo(ClassFile cf, NameMapper nm) throws ClassFileException
     {
         String oldDesc = cf.getUtf8(this.u2signatureIndex);
         String newDesc;
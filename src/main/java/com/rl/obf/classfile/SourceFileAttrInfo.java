@@ -61,6 +61,15 @@ public class SourceFileAttrInfo extends AttrInfo
         return ClassConstants.ATTR_SourceFile;
     }
 
+    /**
+     * The 'info' data refers to Utf8 entries in the constant pool, so must be decoded.
+     */
+    @Override
+    protected boolean hasUtf8RefsInInfo()
+    {
+        return true;
+    }
+
     /**
      * Check for Utf8 references in the 'info' data to the constant pool and mark them.
      * 
@@ -118,24 +118,6 @@ public class StackMapFrameInfo
         }
     }
 
-    /**
-     * Check for Utf8 references to constant pool and mark them.
-     * 
-     * @param pool
-     * @throws ClassFileException
-     */
-    protected void markUtf8Refs(ConstantPool pool) throws ClassFileException
-    {
-        for (VerificationTypeInfo vt : this.stack)
-        {
-            vt.markUtf8Refs(pool);
-        }
-        for (VerificationTypeInfo vt : this.locals)
-        {
-            vt.markUtf8Refs(pool);
-        }
-    }
-
     /**
      * Export the representation to a DataOutput stream.
      * 
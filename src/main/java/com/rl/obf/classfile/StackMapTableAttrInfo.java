@@ -61,20 +61,6 @@ public class StackMapTableAttrInfo extends AttrInfo
         return ClassConstants.ATTR_StackMapTable;
     }
 
-    /**
-     * Check for Utf8 references in the 'info' data to the constant pool and mark them.
-     * 
-     * @throws ClassFileException
-     */
-    @Override
-    protected void markUtf8RefsInInfo(ConstantPool pool) throws ClassFileException
-    {
-        for (StackMapFrameInfo smf : this.entries)
-        {
-            smf.markUtf8Refs(pool);
-        }
-    }
-
     /**
      * Read the data following the header.
      * 
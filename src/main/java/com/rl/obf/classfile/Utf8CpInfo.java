@@ -37,6 +37,12 @@ public class Utf8CpInfo extends CpInfo
     private byte[] bytes;
     private String utf8string;
 
+    /**
+     * Constant pool whose Utf8 index must be told of changes to this entry, and the position of this entry in it
+     */
+    private ConstantPool indexingPool = null;
+    private int poolIndex;
+
 
     // Class Methods ---------------------------------------------------------
 
@@ -62,6 +68,31 @@ public class Utf8CpInfo extends CpInfo
         this.refCount = 1;
     }
 
+    /**
+     * Set the constant pool whose Utf8 index tracks this entry, or null if none does.
+     * 
+     * @param pool
+     * @param index
+     */
+    protected void setIndexingPool(ConstantPool pool, int index)
+    {
+        this.indexingPool = pool;
+        this.poolIndex = index;
+    }
+
+    /**
+     * Increment the reference count.
+     */
+    @Override
+    public void incRefCount()
+    {
+        super.incRefCount();
+        if ((this.refCount == 1) && (this.indexingPool != null))
+        {
+            this.indexingPool.utf8RefCountChanged(this.poolIndex, this.refCount);
+        }
+    }
+
     /**
      * Decrement the reference count, blanking the entry if no more references.
      * 
@@ -74,6 +105,23 @@ public class Utf8CpInfo extends CpInfo
         if (this.refCount == 0)
         {
             this.clearString();
+            if (this.indexingPool != null)
+            {
+                this.indexingPool.utf8RefCountChanged(this.poolIndex, this.refCount);
+            }
+        }
+    }
+
+    /**
+     * Reset the reference count to zero.
+     */
+    @Override
+    public void resetRefCount()
+    {
+        super.resetRefCount();
+        if (this.indexingPool != null)
+        {
+            this.indexingPool.utf8RefCountChanged(this.poolIndex, this.refCount);
         }
     }
 
@@ -103,6 +151,7 @@ public class Utf8CpInfo extends CpInfo
      */
     public void setString(String str)
     {
+        String oldString = (this.indexingPool != null ? this.getString() : null);
         this.utf8string = str;
         try
         {
@@ -113,6 +162,10 @@ public class Utf8CpInfo extends CpInfo
             throw new RuntimeException(e);
         }
         this.u2length = this.bytes.length;
+        if (this.indexingPool != null)
+        {
+            this.indexingPool.utf8StringChanged(this.poolIndex, oldString, str);
+        }
     }
 
     /**
@@ -120,10 +173,15 @@ public class Utf8CpInfo extends CpInfo
      */
     public void clearString()
     {
+        String oldString = (this.indexingPool != null ? this.getString() : null);
         this.u2length = 0;
         this.bytes = new byte[0];
         this.utf8string = null;
         this.getString();
+        if (this.indexingPool != null)
+        {
+            this.indexingPool.utf8StringChanged(this.poolIndex, oldString, this.utf8string);
+        }
     }
 
     /**
@@ -101,20 +101,6 @@ public class VerificationTypeInfo
         }
     }
 
-    /**
-     * Check for Utf8 references to constant pool and mark them.
-     * 
-     * @param pool
-     * @throws ClassFileException
-     */
-    protected void markUtf8Refs(ConstantPool pool) throws ClassFileException
-    {
-        if (this.u1tag == VerificationTypeInfo.ITEM_Object)
-        {
-            pool.incRefCount(this.u2cpoolIndex);
-        }
-    }
-
     /**
      * Export the representation to a DataOutput stream.
      * 
@@ -0,0 +1,201 @@
+/* ===========================================================================
+ * $RCSfile: AsyncLineWriter.java,v $
+ * ===========================================================================
+ *
+ * RetroGuard -- an obfuscation package for Java classfiles.
+ *
+ * This program can be redistributed and/or modified under the terms of the
+ * Version 2 of the GNU General Public License as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+
+package com.rl.util;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+/**
+ * Writes lines of text to a file from a background thread. Lines are queued in the order they are given, and the queue is
+ * bounded so a slow disk holds up the callers rather than filling memory. If the background thread stops early, later lines
+ * are dropped rather than holding up the callers for ever.
+ */
+public class AsyncLineWriter
+{
+    // Constants -------------------------------------------------------------
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final long PUT_WAIT_MILLIS = 100;
+
+    /**
+     * Marks the end of the queue
+     */
+    private static final String END = new String();
+
+
+    // Fields ----------------------------------------------------------------
+    private BlockingQueue<String> queue = new ArrayBlockingQueue<String>(AsyncLineWriter.QUEUE_CAPACITY);
+    private BufferedWriter writer;
+    private Thread thread;
+
+    /**
+     * Has the background thread stopped taking lines from the queue?
+     */
+    private volatile boolean stopped = false;
+
+
+    // Class Methods ---------------------------------------------------------
+
+
+    // Instance Methods ------------------------------------------------------
+    /**
+     * Constructor
+     * 
+     * @param file
+     * @param append
+     * @throws IOException
+     */
+    public AsyncLineWriter(File file, boolean append) throws IOException
+    {
+        this.writer = new BufferedWriter(new FileWriter(file, append));
+        this.thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                AsyncLineWriter.this.drain();
+            }
+        }, "RetroGuard log writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queue a line to be written.
+     * 
+     * @param text
+     */
+    public void writeLine(String text)
+    {
+        this.put(text);
+    }
+
+    /**
+     * Write all queued lines, and close the file.
+     */
+    public void close()
+    {
+        this.put(AsyncLineWriter.END);
+        boolean interrupted = false;
+        while (this.thread.isAlive())
+        {
+            try
+            {
+                this.thread.join();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Add to the queue, waiting for space if it is full, unless the background thread has stopped.
+     * 
+     * @param text
+     */
+    private void put(String text)
+    {
+        boolean interrupted = false;
+        while (!this.stopped)
+        {
+            try
+            {
+                if (this.queue.offer(text, AsyncLineWriter.PUT_WAIT_MILLIS, TimeUnit.MILLISECONDS))
+                {
+                    break;
+                }
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write lines from the queue until the end marker, flushing whenever the queue runs dry. Write errors are ignored, but
+     * the queue is still drained so callers never block. However this ends, the writer is then marked as stopped.
+     */
+    private void drain()
+    {
+        boolean failed = false;
+        try
+        {
+            while (true)
+            {
+                String text = this.queue.poll();
+                if (text == null)
+                {
+                    if (!failed)
+                    {
+                        try
+                        {
+                            this.writer.flush();
+                        }
+                        catch (IOException e)
+                        {
+                            failed = true;
+                        }
+                    }
+                    text = this.queue.take();
+                }
+                if (text == AsyncLineWriter.END)
+                {
+                    break;
+                }
+                if (!failed)
+                {
+                    try
+                    {
+                        this.writer.write(text);
+                        this.writer.newLine();
+                    }
+                    catch (IOException e)
+                    {
+                        failed = true;
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            // give up, and close what has been written so far
+        }
+        finally
+        {
+            this.stopped = true;
+            try
+            {
+                this.writer.close();
+            }
+            catch (IOException e)
+            {
+                // ignore
+            }
+        }
+    }
+}
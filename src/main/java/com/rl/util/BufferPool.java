@@ -0,0 +1,83 @@
+/* ===========================================================================
+ * $RCSfile: BufferPool.java,v $
+ * ===========================================================================
+ *
+ * RetroGuard -- an obfuscation package for Java classfiles.
+ *
+ * This program can be redistributed and/or modified under the terms of the
+ * Version 2 of the GNU General Public License as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+
+package com.rl.util;
+
+import java.util.*;
+
+/**
+ * A pool of fixed-size byte buffers for copying streams, so that copying any number of entries of any size uses a constant
+ * amount of memory. Buffers may be taken and returned from any thread.
+ */
+public class BufferPool
+{
+    // Constants -------------------------------------------------------------
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+
+    // Fields ----------------------------------------------------------------
+    private int bufferSize;
+    private LinkedList<byte[]> free = new LinkedList<byte[]>();
+
+
+    // Class Methods ---------------------------------------------------------
+
+
+    // Instance Methods ------------------------------------------------------
+    /**
+     * Constructor
+     * 
+     * @param bufferSize
+     */
+    public BufferPool(int bufferSize)
+    {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Return the size of the buffers.
+     */
+    public int getBufferSize()
+    {
+        return this.bufferSize;
+    }
+
+    /**
+     * Take a buffer from the pool, creating one if none are free.
+     */
+    public synchronized byte[] take()
+    {
+        if (this.free.isEmpty())
+        {
+            return new byte[this.bufferSize];
+        }
+        return this.free.removeFirst();
+    }
+
+    /**
+     * Return a buffer to the pool.
+     * 
+     * @param buf
+     */
+    public synchronized void give(byte[] buf)
+    {
+        if ((buf != null) && (buf.length == this.bufferSize))
+        {
+            this.free.addFirst(buf);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/* ===========================================================================
+ * $RCSfile: RawZipFile.java,v $
+ * ===========================================================================
+ *
+ * RetroGuard -- an obfuscation package for Java classfiles.
+ *
+ * This program can be redistributed and/or modified under the terms of the
+ * Version 2 of the GNU General Public License as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+
+package com.rl.util;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Read access to the entries of a Zip file as they are stored, still compressed, so that they can be copied to another Zip
+ * file without being inflated and deflated again. Only entries which are stored or deflated, not encrypted and without Zip64
+ * sizes are listed; others must be read through ZipFile.
+ */
+public class RawZipFile
+{
+    // Constants -------------------------------------------------------------
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int FLAG_ENCRYPTED = 0x0001;
+
+
+    // Fields ----------------------------------------------------------------
+    private RandomAccessFile file;
+
+    /**
+     * Entries by name, with null for names used by more than one entry
+     */
+    private Map<String, Entry> entries = new HashMap<String, Entry>();
+
+
+    // Class Methods ---------------------------------------------------------
+    private static int getShort(byte[] b, int off)
+    {
+        return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8);
+    }
+
+    private static long getInt(byte[] b, int off)
+    {
+        return (RawZipFile.getShort(b, off) | ((long)RawZipFile.getShort(b, off + 2) << 16)) & 0xFFFFFFFFL;
+    }
+
+
+    // Instance Methods ------------------------------------------------------
+    /**
+     * Constructor, which reads the central directory of the file.
+     * 
+     * @param zipFile
+     * @throws IOException
+     */
+    public RawZipFile(File zipFile) throws IOException
+    {
+        this.file = new RandomAccessFile(zipFile, "r");
+        try
+        {
+            this.readCentralDirectory();
+        }
+        catch (IOException e)
+        {
+            this.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Find the end of central directory record, and read the central directory it points to.
+     * 
+     * @throws IOException
+     */
+    private void readCentralDirectory() throws IOException
+    {
+        long length = this.file.length();
+        int tailSize = (int)Math.min(length, RawZipFile.END_SIZE + RawZipFile.MAX_COMMENT_SIZE);
+        byte[] tail = new byte[tailSize];
+        this.file.seek(length - tailSize);
+        this.file.readFully(tail);
+        int end = -1;
+        for (int i = tailSize - RawZipFile.END_SIZE; i >= 0; i--)
+        {
+            if ((RawZipFile.getInt(tail, i) == RawZipFile.END_SIGNATURE)
+                && ((i + RawZipFile.END_SIZE + RawZipFile.getShort(tail, i + 20)) == tailSize))
+            {
+                end = i;
+                break;
+            }
+        }
+        if (end == -1)
+        {
+            throw new ZipException("No end of central directory record in Zip file.");
+        }
+
+        int count = RawZipFile.getShort(tail, end + 10);
+        long size = RawZipFile.getInt(tail, end + 12);
+        long offset = RawZipFile.getInt(tail, end + 16);
+        if ((count == 0xFFFF) || (size == RawZipFile.ZIP64_MAGIC) || (offset == RawZipFile.ZIP64_MAGIC)
+            || ((offset + size) > (length - tailSize + end)))
+        {
+            throw new ZipException("Unsupported central directory in Zip file.");
+        }
+        byte[] cd = new byte[(int)size];
+        this.file.seek(offset);
+        this.file.readFully(cd);
+
+        int pos = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (((pos + RawZipFile.CENTRAL_HEADER_SIZE) > cd.length)
+                || (RawZipFile.getInt(cd, pos) != RawZipFile.CENTRAL_HEADER_SIGNATURE))
+            {
+                throw new ZipException("Invalid central directory in Zip file.");
+            }
+            int nameLength = RawZipFile.getShort(cd, pos + 28);
+            int headerLength = RawZipFile.CENTRAL_HEADER_SIZE + nameLength + RawZipFile.getShort(cd, pos + 30)
+                + RawZipFile.getShort(cd, pos + 32);
+            if ((pos + headerLength) > cd.length)
+            {
+                throw new ZipException("Invalid central directory in Zip file.");
+            }
+
+            Entry entry = new Entry();
+            int flags = RawZipFile.getShort(cd, pos + 8);
+            entry.method = RawZipFile.getShort(cd, pos + 10);
+            entry.crc = RawZipFile.getInt(cd, pos + 16);
+            entry.compressedSize = RawZipFile.getInt(cd, pos + 20);
+            entry.size = RawZipFile.getInt(cd, pos + 24);
+            entry.offset = RawZipFile.getInt(cd, pos + 42);
+            String name = new String(cd, pos + RawZipFile.CENTRAL_HEADER_SIZE, nameLength, "UTF8");
+            pos += headerLength;
+
+            if (((flags & RawZipFile.FLAG_ENCRYPTED) != 0)
+                || ((entry.method != ZipEntry.STORED) && (entry.method != ZipEntry.DEFLATED))
+                || (entry.compressedSize == RawZipFile.ZIP64_MAGIC) || (entry.size == RawZipFile.ZIP64_MAGIC)
+                || (entry.offset == RawZipFile.ZIP64_MAGIC))
+            {
+                entry = null;
+            }
+            if (this.entries.containsKey(name))
+            {
+                entry = null;
+            }
+            this.entries.put(name, entry);
+        }
+    }
+
+    /**
+     * Return the entry of this name, or null if it is not in the file or cannot be copied raw.
+     * 
+     * @param name
+     */
+    public Entry getEntry(String name)
+    {
+        return this.entries.get(name);
+    }
+
+    /**
+     * Return a stream of the stored data of an entry, or null if the local header of the entry is not where the central
+     * directory says.
+     * 
+     * @param entry
+     * @throws IOException
+     */
+    public InputStream getRawInputStream(Entry entry) throws IOException
+    {
+        byte[] header = new byte[RawZipFile.LOCAL_HEADER_SIZE];
+        if ((entry.offset + RawZipFile.LOCAL_HEADER_SIZE) > this.file.length())
+        {
+            return null;
+        }
+        this.file.seek(entry.offset);
+        this.file.readFully(header);
+        if (RawZipFile.getInt(header, 0) != RawZipFile.LOCAL_HEADER_SIGNATURE)
+        {
+            return null;
+        }
+        long dataOffset = entry.offset + RawZipFile.LOCAL_HEADER_SIZE + RawZipFile.getShort(header, 26)
+            + RawZipFile.getShort(header, 28);
+        if ((dataOffset + entry.compressedSize) > this.file.length())
+        {
+            return null;
+        }
+        return new RawInputStream(dataOffset, entry.compressedSize);
+    }
+
+    /**
+     * Close the file.
+     * 
+     * @throws IOException
+     */
+    public void close() throws IOException
+    {
+        this.file.close();
+    }
+
+    /**
+     * An entry of the Zip file, as recorded in the central directory.
+     */
+    public static class Entry
+    {
+        private int method;
+        private long crc;
+        private long compressedSize;
+        private long size;
+        private long offset;
+
+        /**
+         * Return the compression method, ZipEntry.STORED or ZipEntry.DEFLATED.
+         */
+        public int getMethod()
+        {
+            return this.method;
+        }
+
+        /**
+         * Return the CRC-32 of the uncompressed data.
+         */
+        public long getCrc()
+        {
+            return this.crc;
+        }
+
+        /**
+         * Return the size of the stored data.
+         */
+        public long getCompressedSize()
+        {
+            return this.compressedSize;
+        }
+
+        /**
+         * Return the size of the uncompressed data.
+         */
+        public long getSize()
+        {
+            return this.size;
+        }
+    }
+
+    /**
+     * The stored data of an entry, read from the file.
+     */
+    private class RawInputStream extends InputStream
+    {
+        private long pos;
+        private long remaining;
+
+        /**
+         * Constructor
+         * 
+         * @param pos
+         * @param remaining
+         */
+        private RawInputStream(long pos, long remaining)
+        {
+            this.pos = pos;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] b = new byte[1];
+            return (this.read(b, 0, 1) == 1 ? b[0] & 0xFF : -1);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (this.remaining <= 0)
+            {
+                return -1;
+            }
+            len = (int)Math.min(len, this.remaining);
+            RawZipFile.this.file.seek(this.pos);
+            RawZipFile.this.file.readFully(b, off, len);
+            this.pos += len;
+            this.remaining -= len;
+            return len;
+        }
+    }
+}
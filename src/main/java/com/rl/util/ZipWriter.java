@@ -0,0 +1,657 @@
+/* ===========================================================================
+ * $RCSfile: ZipWriter.java,v $
+ * ===========================================================================
+ *
+ * RetroGuard -- an obfuscation package for Java classfiles.
+ *
+ * This program can be redistributed and/or modified under the terms of the
+ * Version 2 of the GNU General Public License as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+
+package com.rl.util;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Writer of a Zip file, which unlike ZipOutputStream can also take entries whose data is already compressed, such as those
+ * read from another Zip file by RawZipFile. Entries whose data is given whole have their sizes and CRC-32 in the local header;
+ * entries streamed from an InputStream have them in a data descriptor following the data. Entry data may be compressed by
+ * compress on any number of threads, while the entries are written in order by a single thread.
+ */
+public class ZipWriter
+{
+    // Constants -------------------------------------------------------------
+    /**
+     * Compression level for entries which are stored rather than deflated; other levels are those of Deflater
+     */
+    public static final int LEVEL_STORED = -2;
+    public static final int LEVEL_DEFAULT = Deflater.DEFAULT_COMPRESSION;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    private static final int VERSION_STORED = 10;
+    private static final int VERSION_DEFLATED = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final int FLAG_UTF8 = 0x0800;
+
+
+    // Fields ----------------------------------------------------------------
+    private OutputStream out;
+
+    /**
+     * Number of bytes written so far
+     */
+    private long written = 0;
+
+    private List<Entry> entries = new ArrayList<Entry>();
+
+    /**
+     * Names of the entries written, which must be unique
+     */
+    private Set<String> names = new HashSet<String>();
+
+    private byte[] comment = null;
+    private int level;
+    private BufferPool buffers;
+
+    /**
+     * Deflaters not in use, shared by the threads compressing entries
+     */
+    private LinkedList<Deflater> deflaters = new LinkedList<Deflater>();
+
+
+    // Class Methods ---------------------------------------------------------
+    /**
+     * Convert a time in milliseconds to MS-DOS date and time format.
+     * 
+     * @param time
+     */
+    private static long toDosTime(long time)
+    {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
+        int year = cal.get(Calendar.YEAR);
+        if (year < 1980)
+        {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((year - 1980) << 25) | ((cal.get(Calendar.MONTH) + 1) << 21) | (cal.get(Calendar.DAY_OF_MONTH) << 16)
+            | (cal.get(Calendar.HOUR_OF_DAY) << 11) | (cal.get(Calendar.MINUTE) << 5) | (cal.get(Calendar.SECOND) >> 1);
+    }
+
+    private static void putShort(byte[] b, int off, int value)
+    {
+        b[off] = (byte)value;
+        b[off + 1] = (byte)(value >> 8);
+    }
+
+    private static void putInt(byte[] b, int off, long value)
+    {
+        ZipWriter.putShort(b, off, (int)value);
+        ZipWriter.putShort(b, off + 2, (int)(value >> 16));
+    }
+
+    private static void putLong(byte[] b, int off, long value)
+    {
+        ZipWriter.putInt(b, off, value);
+        ZipWriter.putInt(b, off + 4, value >> 32);
+    }
+
+
+    // Instance Methods ------------------------------------------------------
+    /**
+     * Constructor
+     * 
+     * @param out
+     * @param buffers
+     * @param level
+     */
+    public ZipWriter(OutputStream out, BufferPool buffers, int level)
+    {
+        this.out = out;
+        this.buffers = buffers;
+        this.level = level;
+    }
+
+    /**
+     * Set the comment for the Zip file.
+     * 
+     * @param comment
+     * @throws IOException
+     */
+    public void setComment(String comment) throws IOException
+    {
+        this.comment = (comment != null ? comment.getBytes("UTF8") : null);
+        if ((this.comment != null) && (this.comment.length > 0xFFFF))
+        {
+            throw new IllegalArgumentException("Zip file comment too long.");
+        }
+    }
+
+    /**
+     * Compress the data of an entry, ready to be written. This may be called from any thread.
+     * 
+     * @param data
+     */
+    public Compressed compress(byte[] data)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        if (this.level == ZipWriter.LEVEL_STORED)
+        {
+            return new Compressed(data, ZipEntry.STORED, crc.getValue(), data, data.length);
+        }
+
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream(data.length / 2 + 64);
+        Deflater deflater = this.takeDeflater();
+        byte[] buf = this.buffers.take();
+        try
+        {
+            deflater.setInput(data, 0, data.length);
+            deflater.finish();
+            while (!deflater.finished())
+            {
+                int len = deflater.deflate(buf, 0, buf.length);
+                deflated.write(buf, 0, len);
+            }
+        }
+        finally
+        {
+            this.buffers.give(buf);
+            this.giveDeflater(deflater);
+        }
+        return new Compressed(data, ZipEntry.DEFLATED, crc.getValue(), deflated.toByteArray(), deflated.size());
+    }
+
+    /**
+     * Write an entry, compressing its data.
+     * 
+     * @param name
+     * @param data
+     * @throws IOException
+     */
+    public void write(String name, byte[] data) throws IOException
+    {
+        this.write(name, this.compress(data));
+    }
+
+    /**
+     * Write an entry whose data has been compressed.
+     * 
+     * @param name
+     * @param compressed
+     * @throws IOException
+     */
+    public void write(String name, Compressed compressed) throws IOException
+    {
+        Entry entry = this.createEntry(name, compressed.method, compressed.crc, compressed.compressedLength,
+            compressed.data.length);
+        this.writeLocalHeader(entry);
+        this.out.write(compressed.compressed, 0, compressed.compressedLength);
+        this.written += entry.compressedSize;
+    }
+
+    /**
+     * Write an entry whose data is already stored or deflated, copying exactly its stored size from a stream.
+     * 
+     * @param name
+     * @param method
+     * @param crc
+     * @param compressedSize
+     * @param size
+     * @param in
+     * @throws IOException
+     */
+    public void writeRaw(String name, int method, long crc, long compressedSize, long size, InputStream in) throws IOException
+    {
+        if ((method != ZipEntry.STORED) && (method != ZipEntry.DEFLATED))
+        {
+            throw new ZipException("Unsupported compression method.");
+        }
+        Entry entry = this.createEntry(name, method, crc, compressedSize, size);
+        this.writeLocalHeader(entry);
+        byte[] buf = this.buffers.take();
+        try
+        {
+            long remaining = compressedSize;
+            while (remaining > 0)
+            {
+                int len = in.read(buf, 0, (int)Math.min(remaining, buf.length));
+                if (len == -1)
+                {
+                    throw new EOFException("Unexpected end of stored Zip entry data.");
+                }
+                this.out.write(buf, 0, len);
+                remaining -= len;
+            }
+        }
+        finally
+        {
+            this.buffers.give(buf);
+        }
+        this.written += compressedSize;
+    }
+
+    /**
+     * Write an entry, compressing its data as it is read from a stream, so that entries of any size, known or not, are written
+     * through buffers of a fixed size. The size and CRC-32 of the data are needed to store it rather than deflate it, and may
+     * be -1 if they are not known, in which case the entry is deflated without compression.
+     * 
+     * @param name
+     * @param in
+     * @param size
+     * @param crc
+     * @throws IOException
+     */
+    public void write(String name, InputStream in, long size, long crc) throws IOException
+    {
+        if ((this.level == ZipWriter.LEVEL_STORED) && (size >= 0) && (crc >= 0))
+        {
+            this.writeStored(name, in, size, crc);
+            return;
+        }
+
+        Entry entry = this.createEntry(name, ZipEntry.DEFLATED, 0, 0, 0);
+        entry.flags |= ZipWriter.FLAG_DATA_DESCRIPTOR;
+        this.writeLocalHeader(entry);
+
+        CRC32 dataCrc = new CRC32();
+        Deflater deflater = this.takeDeflater();
+        byte[] inBuf = this.buffers.take();
+        byte[] outBuf = this.buffers.take();
+        try
+        {
+            int len;
+            while ((len = in.read(inBuf, 0, inBuf.length)) != -1)
+            {
+                dataCrc.update(inBuf, 0, len);
+                entry.size += len;
+                deflater.setInput(inBuf, 0, len);
+                while (!deflater.needsInput())
+                {
+                    entry.compressedSize += this.deflate(deflater, outBuf);
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished())
+            {
+                entry.compressedSize += this.deflate(deflater, outBuf);
+            }
+        }
+        finally
+        {
+            this.buffers.give(inBuf);
+            this.buffers.give(outBuf);
+            this.giveDeflater(deflater);
+        }
+        entry.crc = dataCrc.getValue();
+        this.written += entry.compressedSize;
+
+        // Data descriptor, with 8 byte sizes if either does not fit in 4
+        boolean zip64 = (entry.compressedSize >= ZipWriter.ZIP64_MAGIC) || (entry.size >= ZipWriter.ZIP64_MAGIC);
+        byte[] b = new byte[zip64 ? 24 : 16];
+        ZipWriter.putInt(b, 0, ZipWriter.DATA_DESCRIPTOR_SIGNATURE);
+        ZipWriter.putInt(b, 4, entry.crc);
+        if (zip64)
+        {
+            ZipWriter.putLong(b, 8, entry.compressedSize);
+            ZipWriter.putLong(b, 16, entry.size);
+        }
+        else
+        {
+            ZipWriter.putInt(b, 8, entry.compressedSize);
+            ZipWriter.putInt(b, 12, entry.size);
+        }
+        this.writeBytes(b);
+    }
+
+    /**
+     * Write an entry stored uncompressed from a stream, whose size and CRC-32 are known ahead of its data.
+     * 
+     * @param name
+     * @param in
+     * @param size
+     * @param crc
+     * @throws IOException
+     */
+    private void writeStored(String name, InputStream in, long size, long crc) throws IOException
+    {
+        Entry entry = this.createEntry(name, ZipEntry.STORED, crc, size, size);
+        this.writeLocalHeader(entry);
+        CRC32 dataCrc = new CRC32();
+        byte[] buf = this.buffers.take();
+        try
+        {
+            long remaining = size;
+            int len;
+            while ((len = in.read(buf, 0, buf.length)) != -1)
+            {
+                if (len > remaining)
+                {
+                    throw new ZipException("Zip entry data longer than expected: " + name);
+                }
+                dataCrc.update(buf, 0, len);
+                this.out.write(buf, 0, len);
+                remaining -= len;
+            }
+            if ((remaining != 0) || (dataCrc.getValue() != crc))
+            {
+                throw new ZipException("Zip entry data does not match its size or CRC-32: " + name);
+            }
+        }
+        finally
+        {
+            this.buffers.give(buf);
+        }
+        this.written += size;
+    }
+
+    /**
+     * Write out the next deflated data of a streamed entry, and return its length.
+     * 
+     * @param deflater
+     * @param buf
+     * @throws IOException
+     */
+    private int deflate(Deflater deflater, byte[] buf) throws IOException
+    {
+        int len = deflater.deflate(buf, 0, buf.length);
+        this.out.write(buf, 0, len);
+        return len;
+    }
+
+    /**
+     * Write the central directory, and close the underlying stream.
+     * 
+     * @throws IOException
+     */
+    public void close() throws IOException
+    {
+        try
+        {
+            long cdOffset = this.written;
+            for (Entry entry : this.entries)
+            {
+                this.writeCentralHeader(entry);
+            }
+            long cdSize = this.written - cdOffset;
+
+            // Zip64 end of central directory record and locator, when the counts or offsets do not fit
+            boolean zip64 = (this.entries.size() >= ZipWriter.ZIP64_MAGIC_COUNT) || (cdOffset >= ZipWriter.ZIP64_MAGIC)
+                || (cdSize >= ZipWriter.ZIP64_MAGIC);
+            if (zip64)
+            {
+                long zip64EndOffset = this.written;
+                byte[] b = new byte[56 + 20];
+                ZipWriter.putInt(b, 0, ZipWriter.ZIP64_END_SIGNATURE);
+                ZipWriter.putLong(b, 4, 56 - 12);
+                ZipWriter.putShort(b, 12, ZipWriter.VERSION_ZIP64);
+                ZipWriter.putShort(b, 14, ZipWriter.VERSION_ZIP64);
+                ZipWriter.putLong(b, 24, this.entries.size());
+                ZipWriter.putLong(b, 32, this.entries.size());
+                ZipWriter.putLong(b, 40, cdSize);
+                ZipWriter.putLong(b, 48, cdOffset);
+                ZipWriter.putInt(b, 56, ZipWriter.ZIP64_LOCATOR_SIGNATURE);
+                ZipWriter.putLong(b, 64, zip64EndOffset);
+                ZipWriter.putInt(b, 72, 1);
+                this.writeBytes(b);
+            }
+
+            byte[] b = new byte[22];
+            ZipWriter.putInt(b, 0, ZipWriter.END_SIGNATURE);
+            int count = Math.min(this.entries.size(), ZipWriter.ZIP64_MAGIC_COUNT);
+            ZipWriter.putShort(b, 8, count);
+            ZipWriter.putShort(b, 10, count);
+            ZipWriter.putInt(b, 12, Math.min(cdSize, ZipWriter.ZIP64_MAGIC));
+            ZipWriter.putInt(b, 16, Math.min(cdOffset, ZipWriter.ZIP64_MAGIC));
+            ZipWriter.putShort(b, 20, (this.comment != null ? this.comment.length : 0));
+            this.writeBytes(b);
+            if (this.comment != null)
+            {
+                this.writeBytes(this.comment);
+            }
+            this.out.flush();
+        }
+        finally
+        {
+            synchronized (this.deflaters)
+            {
+                for (Deflater deflater : this.deflaters)
+                {
+                    deflater.end();
+                }
+                this.deflaters.clear();
+            }
+            this.out.close();
+        }
+    }
+
+    /**
+     * Take a deflater at the compression level from the pool, creating one if none are free.
+     */
+    private Deflater takeDeflater()
+    {
+        synchronized (this.deflaters)
+        {
+            if (!this.deflaters.isEmpty())
+            {
+                return this.deflaters.removeFirst();
+            }
+        }
+        return new Deflater(this.level == ZipWriter.LEVEL_STORED ? Deflater.NO_COMPRESSION : this.level, true);
+    }
+
+    /**
+     * Reset a deflater and return it to the pool.
+     * 
+     * @param deflater
+     */
+    private void giveDeflater(Deflater deflater)
+    {
+        deflater.reset();
+        synchronized (this.deflaters)
+        {
+            this.deflaters.addFirst(deflater);
+        }
+    }
+
+    /**
+     * Record a new entry, starting at the current position.
+     * 
+     * @param name
+     * @param method
+     * @param crc
+     * @param compressedSize
+     * @param size
+     * @throws IOException
+     */
+    private Entry createEntry(String name, int method, long crc, long compressedSize, long size) throws IOException
+    {
+        if (!this.names.add(name))
+        {
+            throw new ZipException("duplicate entry: " + name);
+        }
+        Entry entry = new Entry();
+        entry.name = name.getBytes("UTF8");
+        if (entry.name.length > 0xFFFF)
+        {
+            throw new ZipException("Zip entry name too long: " + name);
+        }
+        entry.flags = (entry.name.length != name.length() ? ZipWriter.FLAG_UTF8 : 0);
+        entry.method = method;
+        entry.time = ZipWriter.toDosTime(System.currentTimeMillis());
+        entry.crc = crc;
+        entry.compressedSize = compressedSize;
+        entry.size = size;
+        entry.offset = this.written;
+        this.entries.add(entry);
+        return entry;
+    }
+
+    /**
+     * Write the local header of an entry.
+     * 
+     * @param entry
+     * @throws IOException
+     */
+    private void writeLocalHeader(Entry entry) throws IOException
+    {
+        boolean zip64 = (entry.compressedSize >= ZipWriter.ZIP64_MAGIC) || (entry.size >= ZipWriter.ZIP64_MAGIC);
+        byte[] b = new byte[30 + entry.name.length + (zip64 ? 20 : 0)];
+        ZipWriter.putInt(b, 0, ZipWriter.LOCAL_HEADER_SIGNATURE);
+        ZipWriter.putShort(b, 4, entry.getVersion(zip64));
+        ZipWriter.putShort(b, 6, entry.flags);
+        ZipWriter.putShort(b, 8, entry.method);
+        ZipWriter.putInt(b, 10, entry.time);
+        ZipWriter.putInt(b, 14, entry.crc);
+        ZipWriter.putInt(b, 18, (zip64 ? ZipWriter.ZIP64_MAGIC : entry.compressedSize));
+        ZipWriter.putInt(b, 22, (zip64 ? ZipWriter.ZIP64_MAGIC : entry.size));
+        ZipWriter.putShort(b, 26, entry.name.length);
+        ZipWriter.putShort(b, 28, (zip64 ? 20 : 0));
+        System.arraycopy(entry.name, 0, b, 30, entry.name.length);
+        if (zip64)
+        {
+            int pos = 30 + entry.name.length;
+            ZipWriter.putShort(b, pos, ZipWriter.ZIP64_EXTRA_ID);
+            ZipWriter.putShort(b, pos + 2, 16);
+            ZipWriter.putLong(b, pos + 4, entry.size);
+            ZipWriter.putLong(b, pos + 12, entry.compressedSize);
+        }
+        this.writeBytes(b);
+    }
+
+    /**
+     * Write the central directory header of an entry.
+     * 
+     * @param entry
+     * @throws IOException
+     */
+    private void writeCentralHeader(Entry entry) throws IOException
+    {
+        // Zip64 extra field, holding whichever of the sizes and offset do not fit
+        ByteArrayOutputStream extra = new ByteArrayOutputStream();
+        byte[] b8 = new byte[8];
+        for (long value : new long[]{entry.size, entry.compressedSize, entry.offset})
+        {
+            if (value >= ZipWriter.ZIP64_MAGIC)
+            {
+                ZipWriter.putLong(b8, 0, value);
+                extra.write(b8);
+            }
+        }
+        boolean zip64 = (extra.size() > 0);
+
+        byte[] b = new byte[46 + entry.name.length + (zip64 ? 4 + extra.size() : 0)];
+        ZipWriter.putInt(b, 0, ZipWriter.CENTRAL_HEADER_SIGNATURE);
+        ZipWriter.putShort(b, 4, entry.getVersion(zip64));
+        ZipWriter.putShort(b, 6, entry.getVersion(zip64));
+        ZipWriter.putShort(b, 8, entry.flags);
+        ZipWriter.putShort(b, 10, entry.method);
+        ZipWriter.putInt(b, 12, entry.time);
+        ZipWriter.putInt(b, 16, entry.crc);
+        ZipWriter.putInt(b, 20, Math.min(entry.compressedSize, ZipWriter.ZIP64_MAGIC));
+        ZipWriter.putInt(b, 24, Math.min(entry.size, ZipWriter.ZIP64_MAGIC));
+        ZipWriter.putShort(b, 28, entry.name.length);
+        ZipWriter.putShort(b, 30, (zip64 ? 4 + extra.size() : 0));
+        ZipWriter.putInt(b, 42, Math.min(entry.offset, ZipWriter.ZIP64_MAGIC));
+        System.arraycopy(entry.name, 0, b, 46, entry.name.length);
+        if (zip64)
+        {
+            int pos = 46 + entry.name.length;
+            ZipWriter.putShort(b, pos, ZipWriter.ZIP64_EXTRA_ID);
+            ZipWriter.putShort(b, pos + 2, extra.size());
+            System.arraycopy(extra.toByteArray(), 0, b, pos + 4, extra.size());
+        }
+        this.writeBytes(b);
+    }
+
+    private void writeBytes(byte[] b) throws IOException
+    {
+        this.out.write(b);
+        this.written += b.length;
+    }
+
+    /**
+     * The data of an entry, compressed ready to be written, with the uncompressed data it came from.
+     */
+    public static class Compressed
+    {
+        private byte[] data;
+        private int method;
+        private long crc;
+        private byte[] compressed;
+        private int compressedLength;
+
+        /**
+         * Constructor
+         * 
+         * @param data
+         * @param method
+         * @param crc
+         * @param compressed
+         * @param compressedLength
+         */
+        private Compressed(byte[] data, int method, long crc, byte[] compressed, int compressedLength)
+        {
+            this.data = data;
+            this.method = method;
+            this.crc = crc;
+            this.compressed = compressed;
+            this.compressedLength = compressedLength;
+        }
+
+        /**
+         * Return the uncompressed data.
+         */
+        public byte[] getData()
+        {
+            return this.data;
+        }
+    }
+
+    /**
+     * An entry written to the Zip file, kept for the central directory.
+     */
+    private static class Entry
+    {
+        private byte[] name;
+        private int flags;
+        private int method;
+        private long time;
+        private long crc;
+        private long compressedSize;
+        private long size;
+        private long offset;
+
+        /**
+         * Return the version of the Zip format needed to extract the entry.
+         * 
+         * @param zip64
+         */
+        private int getVersion(boolean zip64)
+        {
+            if (zip64)
+            {
+                return ZipWriter.VERSION_ZIP64;
+            }
+            return (this.method == ZipEntry.STORED ? ZipWriter.VERSION_STORED : ZipWriter.VERSION_DEFLATED);
+        }
+    }
+}